@@ -0,0 +1,76 @@
+package btree;
+
+import common.Index;
+
+/**
+ * BTreeAggregator answers aggregates over the indexed column from the metadata of a B+ tree,
+ * without scanning its leaves or the relation. The header page holds the smallest and largest key
+ * and the number of records, and every index node holds the number of records below each child, so
+ * COUNT(*) over a key range reads only the two root-to-leaf paths of the range bounds.
+ *
+ * <p>The aggregates of a partial index cover only the tuples that satisfy its predicate. A sparse
+ * index holds one record per relation page, so it cannot answer aggregates.
+ */
+public class BTreeAggregator {
+  private BTreeDeserializer deserializer;
+
+  /**
+   * Constructs a BTreeAggregator
+   *
+   * @param index the index object for the index built on the aggregated column
+   */
+  public BTreeAggregator(Index index) {
+    this.deserializer = new BTreeDeserializer(index);
+    if (deserializer.isSparse()) {
+      deserializer.close();
+      throw new IllegalArgumentException(
+          "A sparse index does not count the tuples of its relation");
+    }
+  }
+
+  /**
+   * Returns the number of tuples in the indexed relation
+   *
+   * @return the result of COUNT(*)
+   */
+  public int count() {
+    return deserializer.getNumRecords();
+  }
+
+  /**
+   * Returns the number of tuples whose key is in the interval [lowkey, highkey]
+   *
+   * @param lowkey the lower bound
+   * @param highkey the upper bound
+   * @return the result of COUNT(*) with the range predicate
+   */
+  public int count(int lowkey, int highkey) {
+    if (lowkey > highkey) return 0;
+
+    int belowLowkey = lowkey == Integer.MIN_VALUE ? 0 : deserializer.countRecordsAtMost(lowkey - 1);
+    return deserializer.countRecordsAtMost(highkey) - belowLowkey;
+  }
+
+  /**
+   * Returns the smallest key of the indexed column
+   *
+   * @return the result of MIN, or null if the relation is empty
+   */
+  public Integer getMin() {
+    return count() == 0 ? null : deserializer.getMinKey();
+  }
+
+  /**
+   * Returns the largest key of the indexed column
+   *
+   * @return the result of MAX, or null if the relation is empty
+   */
+  public Integer getMax() {
+    return count() == 0 ? null : deserializer.getMaxKey();
+  }
+
+  /** Closes the underlying deserializer */
+  public void close() {
+    deserializer.close();
+  }
+}
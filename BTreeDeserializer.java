@@ -1,16 +1,19 @@
 package btree;
 
+import common.DBCatalog;
 import common.Index;
 import common.Record;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import net.sf.jsqlparser.schema.Column;
 import util.Constants;
 
 /** BTreeDeserializer contains methods to deserialize the tree for IndexScanOperators */
 public class BTreeDeserializer {
-  private FileInputStream fin;
+  private IndexFile file;
   private FileChannel fc;
   private ByteBuffer buffer;
   private Integer currentAddress;
@@ -18,6 +21,30 @@ public class BTreeDeserializer {
   private Integer previousRecordIndex;
   private Integer previousKeyIndex;
   private Integer numLeaves;
+  private Integer order;
+  private Integer height;
+  private Integer minKey;
+  private Integer maxKey;
+  private Integer numRecords;
+  private LeafPage reverseLeaf;
+  private Integer reverseKeyIndex;
+  private Integer reverseRecordIndex;
+  private Index index;
+  private Integer bufferAddress;
+  private Integer readAheadWindow;
+  private Integer consecutiveLeaves;
+  private LeafPrefetcher prefetcher;
+  private FileInputStream dataFin;
+  private InnerLevels innerLevels;
+  private PiecewiseLinearModel model;
+  private IndexPredicate predicate;
+  private Boolean sparse;
+  private FileInputStream relationFin;
+  private ByteBuffer relationPage;
+  private Integer relationPageId;
+  private Integer keyColumnNum;
+  private Integer scanPageId;
+  private Integer scanTupleId;
 
   /**
    * Constructs a BTreeDeserializer
@@ -26,103 +53,266 @@ public class BTreeDeserializer {
    *     on
    */
   public BTreeDeserializer(Index index) {
+    this(index, false);
+  }
+
+  /**
+   * Constructs a BTreeDeserializer, optionally keeping the index levels of the tree in memory. A
+   * deserializer that serves many lookups, such as the inner side of an index nested loop join,
+   * should pin them so that a lookup reads only its leaf.
+   *
+   * @param index the index object containing information about the index the tree was constructed
+   *     on
+   * @param pinInnerLevels whether to decode all index nodes into memory when the file is opened
+   */
+  public BTreeDeserializer(Index index, boolean pinInnerLevels) {
     initFileHandlers(index);
+    this.index = index;
     this.currentAddress = 0;
     this.previousKeyIndex = 0;
     this.previousRecordIndex = null;
+    this.bufferAddress = null;
+    this.readAheadWindow = LeafPrefetcher.DEFAULT_WINDOW;
+    this.consecutiveLeaves = 0;
 
     deserializeHeader();
+    if (pinInnerLevels) {
+      pinInnerLevels();
+    }
   }
 
+  /** Decodes all index nodes of the tree into memory so that descents read no index pages */
+  private void pinInnerLevels() {
+    innerLevels = model == null ? new InnerLevels(fc, rootAddress, numLeaves) : null;
+  }
+
+  /**
+   * Acquires the latest version of the index file. The deserializer keeps reading this version
+   * until it is closed or reset, even if the index is rebuilt in the meantime.
+   *
+   * @param index the index object containing information about the index to read
+   */
   private void initFileHandlers(Index index) {
+    this.file = IndexFile.acquire(index.getIndexFilePath());
+    this.fc = file.getChannel();
+    this.buffer = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+  }
+
+  /**
+   * Reads the page at the current address into the internal buffer. The page already in the buffer
+   * is reused, and pages read ahead by the prefetcher are taken from it instead of the file.
+   */
+  private void readBufferForCurrentAddress() {
+    if (currentAddress.equals(bufferAddress)) {
+      buffer.rewind();
+      return;
+    }
+
+    ByteBuffer page = prefetcher == null ? null : prefetcher.take(currentAddress);
+    if (page != null) {
+      buffer.clear();
+      buffer.put(page);
+      buffer.flip();
+      bufferAddress = currentAddress;
+      return;
+    }
+
+    // Readers of the same index file share its channel, so the page is read at an explicit position
+    buffer.clear();
+    file.read(buffer, (long) currentAddress * Constants.IO.PAGE_SIZE);
+    buffer.flip();
+    bufferAddress = currentAddress;
+  }
+
+  /**
+   * Sets the number of leaves read ahead of a range scan once it has crossed {@link
+   * LeafPrefetcher#TRIGGER_LEAVES} consecutive leaves
+   *
+   * @param window the number of leaves to read ahead, or 0 to disable read-ahead
+   */
+  public void setReadAheadWindow(int window) {
+    closeReadAhead();
+    readAheadWindow = window;
+  }
+
+  /** Counts the leaf the scan has moved to and starts reading ahead once the scan is long enough */
+  private void readAhead() {
+    consecutiveLeaves++;
+    if (readAheadWindow == 0 || consecutiveLeaves < LeafPrefetcher.TRIGGER_LEAVES) return;
+
+    if (prefetcher == null) {
+      prefetcher = new LeafPrefetcher(fc, openDataChannel(), readAheadWindow, numLeaves);
+    }
+    prefetcher.advance(currentAddress);
+  }
+
+  /**
+   * Opens the relation file for unclustered indexes, whose records point to scattered data pages
+   *
+   * @return the channel of the relation file, or null for clustered indexes
+   */
+  private FileChannel openDataChannel() {
+    if (index.isClustered()) return null;
+
     try {
-      this.fin = new FileInputStream(index.getIndexFilePath());
-      this.fc = fin.getChannel();
-      this.buffer = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+      String tableName = index.getIndexColumn().getTable().getName();
+      dataFin = new FileInputStream(DBCatalog.getDB().getFileForTable(tableName));
+      return dataFin.getChannel();
     } catch (IOException e) {
       e.printStackTrace();
     }
+    return null;
   }
 
-  /** Reads the current address from the internal buffer */
-  private void readBufferForCurrentAddress() {
+  /**
+   * Drops the prefetcher and closes the relation file it reads data pages from, so the next long
+   * scan starts a new one
+   */
+  private void closeReadAhead() {
+    cancelReadAhead();
+    prefetcher = null;
     try {
-      buffer.clear();
-      fc.position(currentAddress * Constants.IO.PAGE_SIZE);
-      fc.read(buffer);
-      buffer.flip();
+      if (dataFin != null) {
+        dataFin.close();
+        dataFin = null;
+      }
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
+  /** Drops the pages read ahead of a scan that has stopped */
+  private void cancelReadAhead() {
+    consecutiveLeaves = 0;
+    if (prefetcher != null) {
+      prefetcher.cancel();
+    }
+  }
+
   /** Deserializes the root node of the tree */
   private void deserializeHeader() {
     readBufferForCurrentAddress();
 
     rootAddress = buffer.getInt();
     numLeaves = buffer.getInt();
-    buffer.getInt();
+    order = buffer.getInt();
+    height = buffer.getInt();
+    minKey = buffer.getInt();
+    maxKey = buffer.getInt();
+    numRecords = buffer.getInt();
+    int kind = buffer.getInt();
+    int numSegments = buffer.getInt();
+    int errorBound = buffer.getInt();
+    sparse = buffer.getInt() == 1;
+    int numPredicateColumns = buffer.getInt();
+    predicate = numPredicateColumns == 0 ? null : new IndexPredicate();
+    if (predicate != null) {
+      String tableName = index.getIndexColumn().getTable().getName();
+      ArrayList<Column> schema = DBCatalog.getDB().getTableColumns(tableName);
+      for (int i = 0; i < numPredicateColumns; i++) {
+        String columnName = schema.get(buffer.getInt()).getColumnName();
+        predicate.addRange(columnName, buffer.getInt(), buffer.getInt());
+      }
+    }
     currentAddress = rootAddress;
+
+    // The model of a learned index takes the place of the index nodes and is always kept in memory
+    model =
+        kind == 1
+            ? PiecewiseLinearModel.read(file, rootAddress, numSegments, numLeaves, errorBound)
+            : null;
   }
 
   /**
-   * Increments the current buffer position until the desired key is reached
+   * Descends from the root to the leaf whose key range contains the given key, leaving the current
+   * address at that leaf. Pinned index levels are searched in memory; otherwise every index node on
+   * the path is read from the file. A learned index reads the predicted leaf instead.
    *
-   * @param from the starting key
-   * @param to the destination key
+   * @param key the key to search for
    */
-  private void jumpNodeKeys(int from, int to) {
-    while (from < to) {
-      buffer.getInt();
-      from++;
+  private void descendToLeaf(int key) {
+    if (model != null) {
+      searchPredictedLeaf(key);
+      return;
+    }
+    if (innerLevels != null) {
+      currentAddress = innerLevels.findLeaf(key);
+      return;
+    }
+
+    currentAddress = rootAddress;
+    while (currentAddress > numLeaves) {
+      readBufferForCurrentAddress();
+      buffer.getInt(); // Index node flag
+      int size = buffer.getInt();
+      // Keys equal to the search key start in the child to the right of the separator
+      int keyIndex = 0;
+      while (keyIndex < size
+          && buffer.getInt(buffer.position() + keyIndex * Constants.IO.INT_SIZE) <= key) {
+        keyIndex++;
+      }
+      currentAddress = buffer.getInt(buffer.position() + (size + keyIndex) * Constants.IO.INT_SIZE);
     }
   }
 
   /**
-   * Deserializes all of the internal nodes along the path to the first leaf node with a key in the
-   * interval [lowkey, highkey]
+   * Reads the leaf the learned model predicts for the given key and moves to its neighbours until
+   * the leaf whose key range contains the key is in the buffer. The prediction is at most the error
+   * bound of the model away, and usually no neighbour has to be read.
    *
-   * @param lowkey the lower key bound
-   * @param highkey the upper key bound
-   * @return the record of the first leaf node with key >= lowkey
+   * @param key the key to search for
    */
-  private Record deserializeInternalNodes(int lowkey, int highkey) {
-    int keyIndex;
-    int size = buffer.getInt();
-    for (keyIndex = 0; keyIndex < size; keyIndex++) {
-      int temp = buffer.getInt();
-      if (temp >= lowkey) {
-        break;
-      }
-    }
-    // Skip all remaining keys:
-    jumpNodeKeys(keyIndex + 1, size);
+  private void searchPredictedLeaf(int key) {
+    currentAddress = model.predictLeaf(key);
+    readBufferForCurrentAddress();
 
-    for (int i = 0; i < size + 1; i++) {
-      int childAddress = buffer.getInt();
+    // Move left while the leaf starts after the key
+    while (currentAddress > 1 && buffer.getInt(2 * Constants.IO.INT_SIZE) > key) {
+      currentAddress--;
+      readBufferForCurrentAddress();
+    }
 
-      if (i == keyIndex) {
-        currentAddress = childAddress;
-        break;
-      }
+    // Move right while the next leaf starts at or before the key. This can only be the case if the
+    // key is greater than every key of the current leaf, and only the first key of the next leaf
+    // is read to check it.
+    while (currentAddress < numLeaves && key > getLastLeafKey()) {
+      ByteBuffer firstKey = ByteBuffer.allocate(Constants.IO.INT_SIZE);
+      file.read(
+          firstKey,
+          (long) (currentAddress + 1) * Constants.IO.PAGE_SIZE + 2 * Constants.IO.INT_SIZE);
+      if (firstKey.getInt(0) > key) break;
+      currentAddress++;
+      readBufferForCurrentAddress();
     }
-    jumpNodeKeys(keyIndex + 1, size + 1);
+    buffer.rewind();
+  }
 
-    return deserializeNodes(lowkey, highkey);
+  /**
+   * Returns the last key of the leaf in the buffer
+   *
+   * @return the largest key of the leaf
+   */
+  private int getLastLeafKey() {
+    int size = buffer.getInt(Constants.IO.INT_SIZE);
+    int position = 2 * Constants.IO.INT_SIZE;
+    for (int i = 0; i < size - 1; i++) {
+      int numRecords = buffer.getInt(position + Constants.IO.INT_SIZE);
+      position += (2 + 2 * numRecords) * Constants.IO.INT_SIZE;
+    }
+    return buffer.getInt(position);
   }
 
   /**
-   * Deserializes a single internal node and returns the next node in the layer below with key in
-   * interval [lowkey, highkey]
+   * Scans the leaf at the current address for the first record with key in the interval [lowkey,
+   * highkey], moving on to the following leaves if every key of this one is below lowkey
    *
    * @param lowkey the lower bound
    * @param highkey the upper bound
-   * @return the record of the first node in the layer below with a key in the interval [lowkey,
-   *     highkey]
+   * @return the first record with key in the interval [lowkey, highkey], or null if there is none
    */
-  private Record deserializeInternalNode(int lowkey, int highkey) {
-    Record record = null;
+  private Record deserializeLeafNode(int lowkey, int highkey) {
+    readBufferForCurrentAddress();
+    if (buffer.getInt() != 0) return null;
     int size = buffer.getInt();
 
     for (int i = 0; i < size; i++) {
@@ -143,61 +333,221 @@ public class BTreeDeserializer {
       }
     }
 
-    return record;
+    // Every key in this leaf is below lowkey, so the first match can only be in the next leaf
+    currentAddress = buffer.getInt(LeafPage.NEXT_OFFSET);
+    previousKeyIndex = 0;
+    previousRecordIndex = null;
+    return getNextRecord(lowkey, highkey);
   }
 
   /**
-   * Traverses all nodes along the path to the first leaf node with a key in the interval [lowkey,
-   * highkey]
+   * Returns the record of the first leaf node with key in the interval [lowkey, highkey]
    *
    * @param lowkey the lower bound
    * @param highkey the upper bound
    * @return the record of the first leaf node with key in the interval [lowkey, highkey]
    */
-  private Record deserializeNodes(int lowkey, int highkey) {
-    readBufferForCurrentAddress();
+  public Record findFirstRecord(int lowkey, int highkey) {
+    // Every search starts from the root, so the deserializer can be reused for several probes
+    cancelReadAhead();
+    previousKeyIndex = 0;
+    previousRecordIndex = null;
+    if (numLeaves == 0) return null;
+
+    if (sparse) {
+      // Pages whose first key is less than lowkey; the first match is on the last of them or later
+      int pagesBefore = lowkey == Integer.MIN_VALUE ? 0 : countRecordsAtMost(lowkey - 1);
+      scanPageId = Math.max(0, pagesBefore - 1);
+      scanTupleId = -1;
+      return getNextSparseRecord(lowkey, highkey);
+    }
 
-    int nodeType = buffer.getInt();
+    descendToLeaf(lowkey);
+    return deserializeLeafNode(lowkey, highkey);
+  }
 
-    if (nodeType == 0) {
-      // After reaching the root node, return the first record that matches
-      // the given lowkey and highkey condition.
-      return deserializeInternalNode(lowkey, highkey);
-    } else if (nodeType == 1) {
-      // Traverse all the index node and try to reach the root node
-      return deserializeInternalNodes(lowkey, highkey);
+  /**
+   * Returns the next tuple of the sorted relation with key in the interval [lowkey, highkey], after
+   * the tuple at the scan position of a sparse index
+   *
+   * @param lowkey the lower bound
+   * @param highkey the upper bound
+   * @return the record of the tuple, or null if there is none
+   */
+  private Record getNextSparseRecord(int lowkey, int highkey) {
+    while (readRelationPage(scanPageId)) {
+      int numTuples = relationPage.getInt(Constants.IO.INT_SIZE);
+      for (int tupleId = scanTupleId + 1; tupleId < numTuples; tupleId++) {
+        int key = getRelationKey(tupleId);
+        if (key > highkey) return null;
+        if (key >= lowkey) {
+          scanTupleId = tupleId;
+          return new Record(scanPageId, tupleId);
+        }
+      }
+      scanPageId++;
+      scanTupleId = -1;
     }
-
-    close();
     return null;
   }
 
   /**
-   * Returns the record of the first leaf node with key in the interval [lowkey, highkey]
+   * Returns the previous tuple of the sorted relation with key in the interval [lowkey, highkey],
+   * before the tuple at the scan position of a sparse index
    *
    * @param lowkey the lower bound
    * @param highkey the upper bound
-   * @return the record of the first leaf node with key in the interval [lowkey, highkey]
+   * @return the record of the tuple, or null if there is none
    */
-  public Record findFirstRecord(int lowkey, int highkey) {
-    return deserializeNodes(lowkey, highkey);
+  private Record getPreviousSparseRecord(int lowkey, int highkey) {
+    while (scanPageId >= 0 && readRelationPage(scanPageId)) {
+      int numTuples = relationPage.getInt(Constants.IO.INT_SIZE);
+      for (int tupleId = Math.min(scanTupleId, numTuples) - 1; tupleId >= 0; tupleId--) {
+        int key = getRelationKey(tupleId);
+        if (key < lowkey) return null;
+        if (key <= highkey) {
+          scanTupleId = tupleId;
+          return new Record(scanPageId, tupleId);
+        }
+      }
+      scanPageId--;
+      scanTupleId = Integer.MAX_VALUE;
+    }
+    return null;
+  }
+
+  /**
+   * Reads a page of the relation of a sparse index, which is sorted on the index key
+   *
+   * @param pageId the number of the page
+   * @return true if the page exists
+   */
+  private boolean readRelationPage(int pageId) {
+    if (relationPageId != null && relationPageId == pageId) return true;
+
+    try {
+      if (relationFin == null) {
+        String tableName = index.getIndexColumn().getTable().getName();
+        relationFin = new FileInputStream(DBCatalog.getDB().getFileForTable(tableName));
+        relationPage = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+        ArrayList<Column> schema = DBCatalog.getDB().getTableColumns(tableName);
+        String columnName = index.getIndexColumn().getColumnName();
+        for (keyColumnNum = 0; keyColumnNum < schema.size(); keyColumnNum++) {
+          if (schema.get(keyColumnNum).getColumnName().equals(columnName)) break;
+        }
+      }
+      relationPageId = null;
+      relationPage.clear();
+      FileChannel relationFc = relationFin.getChannel();
+      long position = (long) pageId * Constants.IO.PAGE_SIZE;
+      while (relationPage.hasRemaining()
+          && relationFc.read(relationPage, position + relationPage.position()) > 0) {}
+      if (relationPage.position() == 0) return false;
+      relationPageId = pageId;
+      return true;
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+
+  /**
+   * Returns the key of a tuple on the relation page that was read last. A page holds the number of
+   * attributes and the number of tuples, followed by the attributes of every tuple.
+   *
+   * @param tupleId the position of the tuple on the page
+   * @return the value of the index column of the tuple
+   */
+  private int getRelationKey(int tupleId) {
+    int numAttributes = relationPage.getInt(0);
+    return relationPage.getInt(
+        (2 + tupleId * numAttributes + keyColumnNum) * Constants.IO.INT_SIZE);
+  }
+
+  /**
+   * Returns the number of records with key less than or equal to the given key. Only the path from
+   * the root to the leaf containing the key is read: every index node stores the number of records
+   * below each of its children, so the children left of the path are counted without being read.
+   *
+   * @param key the upper bound
+   * @return the number of records with key <= key
+   */
+  public int countRecordsAtMost(int key) {
+    cancelReadAhead();
+    if (numLeaves == 0 || key < minKey) return 0;
+    if (key >= maxKey) return numRecords;
+
+    int count = 0;
+    if (model != null) {
+      searchPredictedLeaf(key);
+      count = readRecordsBefore(currentAddress);
+    } else if (innerLevels != null) {
+      count = innerLevels.countRecordsBefore(key);
+      currentAddress = innerLevels.findLeaf(key);
+    } else {
+      currentAddress = rootAddress;
+      while (currentAddress > numLeaves) {
+        readBufferForCurrentAddress();
+        buffer.getInt(); // Index node flag
+        int size = buffer.getInt();
+        int keysStart = buffer.position();
+        int childrenStart = keysStart + size * Constants.IO.INT_SIZE;
+        int countsStart = childrenStart + (size + 1) * Constants.IO.INT_SIZE;
+        int keyIndex = 0;
+        while (keyIndex < size
+            && buffer.getInt(keysStart + keyIndex * Constants.IO.INT_SIZE) <= key) {
+          count += buffer.getInt(countsStart + keyIndex * Constants.IO.INT_SIZE);
+          keyIndex++;
+        }
+        currentAddress = buffer.getInt(childrenStart + keyIndex * Constants.IO.INT_SIZE);
+      }
+    }
+
+    readBufferForCurrentAddress();
+    LeafPage leaf = new LeafPage(currentAddress, buffer);
+    for (int i = 0; i < leaf.size() && leaf.getKey(i) <= key; i++) {
+      count += leaf.getNumRecords(i);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of records in the leaves before the given leaf of a learned index, which are
+   * stored after the model pages
+   *
+   * @param leafAddress the address of the leaf
+   * @return the number of records in all preceding leaves
+   */
+  private int readRecordsBefore(int leafAddress) {
+    int modelPages = PiecewiseLinearModel.getNumPages(model.getNumSegments());
+    long position =
+        (long) (rootAddress + modelPages) * Constants.IO.PAGE_SIZE
+            + (long) (leafAddress - 1) * Constants.IO.INT_SIZE;
+    ByteBuffer count = ByteBuffer.allocate(Constants.IO.INT_SIZE);
+    file.read(count, position);
+    return count.getInt(0);
   }
 
   /**
    * Returns the record following the previously returned record for the same key
    *
-   * @return the next record for the previous key
+   * @param lowkey the lower bound
+   * @param highkey the upper bound
+   * @return the next record for the previous key, or null if there is none in [lowkey, highkey]
    */
-  private Record getNextKeyRecord() {
+  private Record getNextKeyRecord(int lowkey, int highkey) {
     for (int i = 0; i <= previousKeyIndex; i++) {
-      buffer.getInt();
+      int key = buffer.getInt();
       int numRecords = buffer.getInt();
 
       for (int j = 0; j < numRecords; j++) {
         int pageId = buffer.getInt();
         int tupleId = buffer.getInt();
 
-        if (i == previousKeyIndex && (previousRecordIndex == null || j > previousRecordIndex)) {
+        if (i == previousKeyIndex
+            && key >= lowkey
+            && key <= highkey
+            && (previousRecordIndex == null || j > previousRecordIndex)) {
           previousRecordIndex = j;
           return new Record(pageId, tupleId);
         }
@@ -214,18 +564,21 @@ public class BTreeDeserializer {
    * @return the next record in the given interval
    */
   public Record getNextRecord(int lowkey, int highkey) {
+    if (sparse) return getNextSparseRecord(lowkey, highkey);
+
     while (true) {
       // Read the buffer at the current address
       readBufferForCurrentAddress();
 
       // If the current address is not pointing to a leaf node return null
-      if (buffer.getInt() != 0) return null;
+      if (currentAddress == 0 || buffer.getInt() != 0) return null;
+      int nextAddress = buffer.getInt(LeafPage.NEXT_OFFSET);
 
       // Get size of the leaf node
       int size = buffer.getInt();
 
       // Check if any other record exists for the previous key
-      Record record = getNextKeyRecord();
+      Record record = getNextKeyRecord(lowkey, highkey);
       if (record != null) return record;
       else previousRecordIndex = null;
 
@@ -241,44 +594,262 @@ public class BTreeDeserializer {
             previousRecordIndex = j;
             return new Record(pageId, tupleId);
           } else if (key > highkey) {
+            cancelReadAhead();
             return null;
           }
         }
       }
 
       // Move to the next leaf node
-      currentAddress++;
+      currentAddress = nextAddress;
       previousKeyIndex = 0;
       previousRecordIndex = null;
+      readAhead();
+    }
+  }
+
+  /**
+   * Descends from the root to the leaf whose key range contains the given key and decodes it for
+   * the reverse cursor
+   *
+   * @param key the key to search for
+   */
+  private void deserializeLeafForKey(int key) {
+    descendToLeaf(key);
+    readBufferForCurrentAddress();
+    reverseLeaf = new LeafPage(currentAddress, buffer);
+  }
+
+  /**
+   * Moves the reverse cursor one record back and returns it
+   *
+   * @param lowkey the lower bound
+   * @param highkey the upper bound
+   * @return the previous record in the interval [lowkey, highkey], or null if there is none
+   */
+  private Record getPreviousLeafRecord(int lowkey, int highkey) {
+    if (reverseLeaf == null) return null;
+
+    while (true) {
+      if (reverseRecordIndex > 0) {
+        reverseRecordIndex--;
+      } else {
+        reverseKeyIndex--;
+        // Move to the previous leaf node once all keys of this one are consumed
+        while (reverseKeyIndex < 0) {
+          if (reverseLeaf.getPreviousAddress() == 0) return null;
+          currentAddress = reverseLeaf.getPreviousAddress();
+          readBufferForCurrentAddress();
+          reverseLeaf = new LeafPage(currentAddress, buffer);
+          reverseKeyIndex = reverseLeaf.size() - 1;
+        }
+        reverseRecordIndex = reverseLeaf.getNumRecords(reverseKeyIndex) - 1;
+      }
+
+      int key = reverseLeaf.getKey(reverseKeyIndex);
+      if (key < lowkey) {
+        return null;
+      } else if (key <= highkey) {
+        return reverseLeaf.getRecord(reverseKeyIndex, reverseRecordIndex);
+      }
     }
   }
 
+  /**
+   * Returns the record of the last leaf entry with key in the interval [lowkey, highkey]. Records
+   * are returned in descending key order, and in reverse (pageId, tupleId) order for equal keys.
+   *
+   * @param lowkey the lower bound
+   * @param highkey the upper bound
+   * @return the last record with key in the interval [lowkey, highkey]
+   */
+  public Record findLastRecord(int lowkey, int highkey) {
+    if (numLeaves == 0) {
+      // An empty index has no leaf to move the reverse cursor through
+      reverseLeaf = null;
+      return null;
+    }
+    if (sparse) {
+      // The last match is on the last page whose first key is at most highkey
+      scanPageId = Math.max(0, countRecordsAtMost(highkey) - 1);
+      scanTupleId = Integer.MAX_VALUE;
+      return getPreviousSparseRecord(lowkey, highkey);
+    }
+    deserializeLeafForKey(highkey);
+    reverseKeyIndex = reverseLeaf.size();
+    reverseRecordIndex = 0;
+    return getPreviousLeafRecord(lowkey, highkey);
+  }
+
+  /**
+   * Returns the record preceding the previously returned record of the reverse cursor
+   *
+   * @param lowkey the lower bound
+   * @param highkey the upper bound
+   * @return the previous record in the interval [lowkey, highkey], or null if there is none
+   */
+  public Record getPreviousRecord(int lowkey, int highkey) {
+    if (sparse) return getPreviousSparseRecord(lowkey, highkey);
+    return getPreviousLeafRecord(lowkey, highkey);
+  }
+
+  /**
+   * Reads the page at the given address of the index file. The page is returned in the internal
+   * buffer, so it is only valid until the next read, and any open cursor is restarted.
+   *
+   * @param address the address of the page
+   * @return the buffer holding the page, positioned at its start
+   */
+  public ByteBuffer readPage(int address) {
+    cancelReadAhead();
+    currentAddress = address;
+    readBufferForCurrentAddress();
+    return buffer;
+  }
+
+  /**
+   * Returns the address of the root node as recorded in the header page
+   *
+   * @return the address of the root node
+   */
+  public Integer getRootAddress() {
+    return rootAddress;
+  }
+
+  /**
+   * Returns the number of leaves in the tree as recorded in the header page
+   *
+   * @return the number of leaves
+   */
   public Integer getNumLeaves() {
-    deserializeHeader();
     return numLeaves;
   }
 
-  /** Closes the buffer, file channel, and file input stream */
+  /**
+   * Returns the smallest key in the tree as recorded in the header page
+   *
+   * @return the smallest key, or 0 if the tree is empty
+   */
+  public Integer getMinKey() {
+    return minKey;
+  }
+
+  /**
+   * Returns the largest key in the tree as recorded in the header page
+   *
+   * @return the largest key, or 0 if the tree is empty
+   */
+  public Integer getMaxKey() {
+    return maxKey;
+  }
+
+  /**
+   * Returns the number of records in the tree as recorded in the header page
+   *
+   * @return the number of records
+   */
+  public Integer getNumRecords() {
+    return numRecords;
+  }
+
+  /**
+   * Returns the learned model of the index
+   *
+   * @return the model, or null if the index is a B+ tree
+   */
+  public PiecewiseLinearModel getModel() {
+    return model;
+  }
+
+  /**
+   * Returns the predicate of a partial index. A query may use the index only if its condition
+   * implies the predicate.
+   *
+   * @return the predicate every indexed tuple satisfies, or null if every tuple is indexed
+   */
+  public IndexPredicate getPredicate() {
+    return predicate;
+  }
+
+  /**
+   * Returns whether the index is a sparse index with one entry per page of the sorted relation. The
+   * records of a sparse index point to the first tuple of each page, and lookups scan the relation
+   * from the page found in the index.
+   *
+   * @return true if the index is sparse
+   */
+  public Boolean isSparse() {
+    return sparse;
+  }
+
+  /**
+   * Returns the order of the tree as recorded in the header page
+   *
+   * @return the order of the tree
+   */
+  public Integer getOrder() {
+    return order;
+  }
+
+  /**
+   * Returns the number of levels in the tree as recorded in the header page. This is the number of
+   * page reads needed to get from the root to a leaf.
+   *
+   * @return the height of the tree
+   */
+  public Integer getHeight() {
+    return height;
+  }
+
+  /** Closes the buffer and the data file, and releases the index file */
   public void close() {
+    closeReadAhead();
+    bufferAddress = null;
+    buffer.clear();
+    if (file != null) {
+      file.release();
+      file = null;
+    }
+    closeRelation();
+  }
+
+  /** Closes the relation file read by the lookups of a sparse index */
+  private void closeRelation() {
     try {
-      buffer.clear();
-      fc.close();
-      fin.close();
+      if (relationFin != null) {
+        relationFin.close();
+        relationFin = null;
+      }
     } catch (IOException e) {
       e.printStackTrace();
     }
+    relationPage = null;
+    relationPageId = null;
   }
 
+  /**
+   * Releases the index file and acquires its latest version, so a deserializer that was opened
+   * before a rebuild sees the new index
+   *
+   * @param index the index object containing information about the index to read
+   */
   public void reset(Index index) {
-    try {
-      this.fin = new FileInputStream(index.getIndexFilePath());
-      this.fc = fin.getChannel();
-      this.currentAddress = 0;
-      this.previousKeyIndex = 0;
-      this.previousRecordIndex = null;
-      deserializeHeader();
-    } catch (IOException e) {
-      e.printStackTrace();
+    closeReadAhead();
+    // The relation of a sparse index may have been sorted again, so its pages are read afresh
+    closeRelation();
+    this.bufferAddress = null;
+    if (file != null) {
+      file.release();
+    }
+    initFileHandlers(index);
+    this.index = index;
+    this.currentAddress = 0;
+    this.previousKeyIndex = 0;
+    this.previousRecordIndex = null;
+    deserializeHeader();
+    // The file may have been rebuilt, so pinned index levels are decoded again
+    if (innerLevels != null) {
+      pinInnerLevels();
     }
   }
 }
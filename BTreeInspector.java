@@ -0,0 +1,285 @@
+package btree;
+
+import common.Index;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import util.Constants;
+
+/**
+ * BTreeInspector prints an existing index file one page at a time. The tree is never held in memory
+ * as nodes, so it works on any index file, not only right after a build, and on indexes larger than
+ * the heap. Levels are printed from the root down, each followed by a summary of its fill factor,
+ * key range and number of records.
+ */
+public class BTreeInspector {
+  private BTreeDeserializer deserializer;
+  private Integer numLeaves;
+  private Integer order;
+  private ArrayList<Integer> levelStarts;
+
+  /**
+   * Constructs a BTreeInspector
+   *
+   * @param index the index object containing information about the index to inspect
+   */
+  public BTreeInspector(Index index) {
+    this.deserializer = new BTreeDeserializer(index);
+    this.numLeaves = deserializer.getNumLeaves();
+    this.order = deserializer.getOrder();
+    this.levelStarts = findLevelStarts();
+  }
+
+  /**
+   * Returns the address of the first node of every level, from the leaf layer up to the root. The
+   * levels are stored one after another, and the first node of a level always points to the first
+   * node of the level below.
+   *
+   * @return the list of first addresses, in bottom-up order
+   */
+  private ArrayList<Integer> findLevelStarts() {
+    ArrayList<Integer> starts = new ArrayList<Integer>();
+    if (numLeaves == 0) return starts;
+
+    starts.add(1);
+    // A learned index stores its model instead of index node levels
+    if (deserializer.getModel() != null) return starts;
+
+    starts.add(numLeaves + 1);
+    for (int address = numLeaves + 2; address <= deserializer.getRootAddress(); address++) {
+      ByteBuffer page = deserializer.readPage(address);
+      int size = page.getInt(Constants.IO.INT_SIZE);
+      int firstChild = page.getInt((2 + size) * Constants.IO.INT_SIZE);
+      if (firstChild == starts.get(starts.size() - 1)) {
+        starts.add(address);
+      }
+    }
+    return starts;
+  }
+
+  /**
+   * Writes the header, the contents of every node and the summary of every level to the writer
+   *
+   * @param writer the writer receiving the output
+   */
+  public void inspect(Writer writer) {
+    write(writer, true);
+  }
+
+  /**
+   * Writes the header and the summary of every level to the writer, without the node contents
+   *
+   * @param writer the writer receiving the output
+   */
+  public void summarize(Writer writer) {
+    write(writer, false);
+  }
+
+  /**
+   * Writes the tree level by level from the root down
+   *
+   * @param writer the writer receiving the output
+   * @param includeNodes whether to write the contents of every node
+   */
+  private void write(Writer writer, boolean includeNodes) {
+    try {
+      writer.write(
+          "Header: root "
+              + deserializer.getRootAddress()
+              + ", leaves "
+              + numLeaves
+              + ", order "
+              + order
+              + ", height "
+              + deserializer.getHeight()
+              + ", keys ["
+              + (numLeaves == 0 ? "" : deserializer.getMinKey() + ", " + deserializer.getMaxKey())
+              + "], records "
+              + deserializer.getNumRecords()
+              + "\n");
+      if (deserializer.isSparse()) {
+        writer.write("Sparse index: one record per relation page\n");
+      }
+      if (deserializer.getPredicate() != null) {
+        writer.write("Partial index on: " + deserializer.getPredicate() + "\n");
+      }
+
+      PiecewiseLinearModel model = deserializer.getModel();
+      if (model != null) {
+        writeModel(writer, model, includeNodes);
+      }
+
+      for (int level = levelStarts.size() - 1; level >= 0; level--) {
+        int first = levelStarts.get(level);
+        int last =
+            level + 1 < levelStarts.size()
+                ? levelStarts.get(level + 1) - 1
+                : model == null ? deserializer.getRootAddress() : numLeaves;
+        writeLevel(writer, levelStarts.size() - 1 - level, first, last, includeNodes);
+      }
+      writer.flush();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes the segments of the model of a learned index followed by its summary
+   *
+   * @param writer the writer receiving the output
+   * @param model the model of the index
+   * @param includeNodes whether to write every segment
+   * @throws IOException if the writer fails
+   */
+  private void writeModel(Writer writer, PiecewiseLinearModel model, boolean includeNodes)
+      throws IOException {
+    writer.write("\nModel (learned index):\n");
+    if (includeNodes) {
+      for (int segment = 0; segment < model.getNumSegments(); segment++) {
+        writer.write(model.getSegmentString(segment) + "\n");
+      }
+    }
+    writer.write(
+        "Model summary: "
+            + model.getNumSegments()
+            + " segments on "
+            + PiecewiseLinearModel.getNumPages(model.getNumSegments())
+            + " pages, error bound "
+            + model.getErrorBound()
+            + " leaves\n");
+  }
+
+  /**
+   * Writes the nodes of a single level followed by its summary
+   *
+   * @param writer the writer receiving the output
+   * @param depth the distance of the level from the root
+   * @param first the address of the first node of the level
+   * @param last the address of the last node of the level
+   * @param includeNodes whether to write the contents of every node
+   * @throws IOException if the writer fails
+   */
+  private void writeLevel(Writer writer, int depth, int first, int last, boolean includeNodes)
+      throws IOException {
+    boolean isLeafLevel = first == 1;
+    writer.write("\nLevel " + depth + (isLeafLevel ? " (leaves)" : " (index nodes)") + ":\n");
+
+    long numKeys = 0;
+    long numRecords = 0;
+    Integer minKey = null;
+    Integer maxKey = null;
+
+    for (int address = first; address <= last; address++) {
+      ByteBuffer page = deserializer.readPage(address);
+      int size;
+      if (isLeafLevel) {
+        LeafPage leaf = new LeafPage(address, page);
+        size = leaf.size();
+        for (int i = 0; i < size; i++) {
+          numRecords += leaf.getNumRecords(i);
+        }
+        if (size > 0) {
+          minKey = minKey == null ? leaf.getKey(0) : Math.min(minKey, leaf.getKey(0));
+          maxKey = maxKey == null ? leaf.getKey(size - 1) : Math.max(maxKey, leaf.getKey(size - 1));
+        }
+        if (includeNodes) {
+          writeLeaf(writer, leaf);
+        }
+      } else {
+        size = page.getInt(Constants.IO.INT_SIZE);
+        int countsStart = (2 + 2 * size + 1) * Constants.IO.INT_SIZE;
+        for (int i = 0; i <= size; i++) {
+          numRecords += page.getInt(countsStart + i * Constants.IO.INT_SIZE);
+        }
+        if (size > 0) {
+          int firstKey = page.getInt(2 * Constants.IO.INT_SIZE);
+          int lastKey = page.getInt((1 + size) * Constants.IO.INT_SIZE);
+          minKey = minKey == null ? firstKey : Math.min(minKey, firstKey);
+          maxKey = maxKey == null ? lastKey : Math.max(maxKey, lastKey);
+        }
+        if (includeNodes) {
+          writeIndexNode(writer, address, page, size);
+        }
+      }
+      numKeys += size;
+    }
+
+    int numNodes = last - first + 1;
+    double fillFactor = 100.0 * numKeys / ((long) numNodes * 2 * order);
+    writer.write(
+        "Level "
+            + depth
+            + " summary: "
+            + numNodes
+            + " nodes, "
+            + numKeys
+            + " keys, fill factor "
+            + String.format("%.1f", fillFactor)
+            + "%, keys ["
+            + (minKey == null ? "" : minKey + ", " + maxKey)
+            + "], records "
+            + numRecords
+            + "\n");
+  }
+
+  /**
+   * Writes the keys, child addresses and child record counts of an index node
+   *
+   * @param writer the writer receiving the output
+   * @param address the address of the index node
+   * @param page the page holding the index node
+   * @param size the number of keys in the index node
+   * @throws IOException if the writer fails
+   */
+  private void writeIndexNode(Writer writer, int address, ByteBuffer page, int size)
+      throws IOException {
+    StringBuilder sb = new StringBuilder();
+    sb.append("IndexNode ").append(address).append(" with keys: [");
+    for (int i = 0; i < size; i++) {
+      sb.append(i > 0 ? ", " : "").append(page.getInt((2 + i) * Constants.IO.INT_SIZE));
+    }
+    sb.append("], children: [");
+    for (int i = 0; i <= size; i++) {
+      sb.append(i > 0 ? ", " : "").append(page.getInt((2 + size + i) * Constants.IO.INT_SIZE));
+    }
+    sb.append("], records: [");
+    for (int i = 0; i <= size; i++) {
+      sb.append(i > 0 ? ", " : "").append(page.getInt((3 + 2 * size + i) * Constants.IO.INT_SIZE));
+    }
+    sb.append("]\n");
+    writer.write(sb.toString());
+  }
+
+  /**
+   * Writes the sibling addresses and the records of every key of a leaf
+   *
+   * @param writer the writer receiving the output
+   * @param leaf the decoded leaf
+   * @throws IOException if the writer fails
+   */
+  private void writeLeaf(Writer writer, LeafPage leaf) throws IOException {
+    writer.write(
+        "LeafNode "
+            + leaf.getAddress()
+            + " (previous "
+            + leaf.getPreviousAddress()
+            + ", next "
+            + leaf.getNextAddress()
+            + "):\n");
+    for (int i = 0; i < leaf.size(); i++) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("Key: ").append(leaf.getKey(i)).append(", Value: ");
+      for (int j = 0; j < leaf.getNumRecords(i); j++) {
+        sb.append(leaf.getRecord(i, j).toString());
+      }
+      sb.append("\n");
+      writer.write(sb.toString());
+    }
+  }
+
+  /** Closes the underlying deserializer */
+  public void close() {
+    deserializer.close();
+  }
+}
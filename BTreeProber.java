@@ -0,0 +1,151 @@
+package btree;
+
+import common.DBCatalog;
+import common.Index;
+import common.Record;
+import common.Tuple;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import net.sf.jsqlparser.schema.Column;
+import operator.ScanOperator;
+import util.Constants;
+
+/**
+ * BTreeProber looks up the inner side of an index nested-loop join. Each outer key is probed with a
+ * root-to-leaf descent of the inner relation's B+ tree, and the matching records are fetched from
+ * the inner relation by their (pageId, tupleId).
+ */
+public class BTreeProber {
+  private Index index;
+  private BTreeDeserializer deserializer;
+  private ScanOperator innerScanner;
+  private Boolean pinInnerLevels;
+
+  /**
+   * Constructs a BTreeProber that keeps the index levels in memory
+   *
+   * @param index the index object for the index built on the inner join column
+   */
+  public BTreeProber(Index index) {
+    this(index, true);
+  }
+
+  /**
+   * Constructs a BTreeProber
+   *
+   * @param index the index object for the index built on the inner join column
+   * @param pinInnerLevels whether to decode the index levels into memory once, so every probe reads
+   *     only its leaf, instead of reading them on every descent
+   */
+  public BTreeProber(Index index, boolean pinInnerLevels) {
+    this.index = index;
+    this.pinInnerLevels = pinInnerLevels;
+    this.deserializer = new BTreeDeserializer(index, pinInnerLevels);
+    String tableName = index.getIndexColumn().getTable().getName();
+    ArrayList<Column> outputSchema = DBCatalog.getDB().getTableColumns(tableName);
+    this.innerScanner = new ScanOperator(outputSchema);
+  }
+
+  /**
+   * Returns the records of all inner tuples whose key is equal to the given key
+   *
+   * @param key the outer join key
+   * @return the list of matching records, empty if there is no match
+   */
+  public ArrayList<Record> probe(int key) {
+    ArrayList<Record> records = new ArrayList<Record>();
+    Record record = deserializer.findFirstRecord(key, key);
+    while (record != null) {
+      records.add(record);
+      record = deserializer.getNextRecord(key, key);
+    }
+    return records;
+  }
+
+  /**
+   * Probes the index once for every distinct key of a batch of outer keys. The keys are probed in
+   * ascending order, so consecutive descents touch neighbouring pages of the index file.
+   *
+   * @param keys the outer join keys of the current batch, possibly unsorted and with duplicates
+   * @return the map of each distinct key that has a match to its list of matching records
+   */
+  public TreeMap<Integer, ArrayList<Record>> probeBatch(Collection<Integer> keys) {
+    TreeMap<Integer, ArrayList<Record>> matches = new TreeMap<Integer, ArrayList<Record>>();
+    for (int key : new TreeSet<Integer>(keys)) {
+      ArrayList<Record> records = probe(key);
+      if (!records.isEmpty()) {
+        matches.put(key, records);
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Resolves the given records to the tuples of the inner relation
+   *
+   * @param records the records containing the pageid and tupleid of the desired tuples
+   * @return the inner tuples in the same order as the records
+   */
+  public ArrayList<Tuple> resolveTuples(ArrayList<Record> records) {
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    for (Record record : records) {
+      int pagePosition = record.getPageId() * Constants.IO.PAGE_SIZE;
+      innerScanner.resetToTuple(pagePosition, record.getTupleId());
+      tuples.add(innerScanner.getNextTuple());
+    }
+    return tuples;
+  }
+
+  /**
+   * Returns the number of pages read when the index levels are loaded into memory, from the header
+   * of the index file
+   *
+   * @return the number of index node pages, or of model pages for a learned index
+   */
+  private int getIndexPages() {
+    PiecewiseLinearModel model = deserializer.getModel();
+    if (model != null) {
+      return PiecewiseLinearModel.getNumPages(model.getNumSegments());
+    }
+    // The index levels are stored after the leaves, with the root last
+    return deserializer.getHeight() > 1
+        ? deserializer.getRootAddress() - deserializer.getNumLeaves()
+        : 0;
+  }
+
+  /**
+   * Estimates the number of page reads of an index nested-loop join with this index on the inner
+   * side, from the height and number of leaves recorded in the header. Pinned index levels (and the
+   * model of a learned index) are read once; {@link #probeBatch} then probes every distinct outer
+   * key once, reading a single leaf if the levels are pinned and a whole root-to-leaf path of
+   * height pages otherwise. Every outer tuple then reads one data page per match for an unclustered
+   * index, and a single data page for a clustered one.
+   *
+   * @param outerTuples the number of tuples in the outer relation
+   * @param distinctOuterKeys the number of distinct join keys in the outer relation
+   * @param matchesPerProbe the expected number of inner tuples matching a single outer key
+   * @return the estimated number of page reads
+   */
+  public Integer getProbeCost(int outerTuples, int distinctOuterKeys, double matchesPerProbe) {
+    if (deserializer.getNumLeaves() == 0) return 0;
+
+    boolean levelsInMemory = pinInnerLevels || deserializer.getModel() != null;
+    int loadPages = levelsInMemory ? getIndexPages() : 0;
+    int pagesPerProbe = levelsInMemory ? 1 : deserializer.getHeight();
+    double dataPages = index.isClustered() ? 1 : Math.ceil(matchesPerProbe);
+    return (int)
+        Math.ceil(loadPages + (double) distinctOuterKeys * pagesPerProbe + outerTuples * dataPages);
+  }
+
+  /** Resets the prober to search the index from the root */
+  public void reset() {
+    innerScanner.reset();
+  }
+
+  /** Closes the underlying deserializer */
+  public void close() {
+    deserializer.close();
+  }
+}
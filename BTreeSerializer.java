@@ -11,8 +11,17 @@ import util.Constants;
 /** BTreeSerializer contains methods to serialize a constructed index tree */
 public class BTreeSerializer {
   private FileOutputStream fout;
+  private String indexFilePath;
+  private String tempFilePath;
   private FileChannel fc;
   private ByteBuffer buffer;
+  private Integer leafSize;
+  private Integer recordCountPosition;
+  private Integer recordCount;
+  private PiecewiseLinearModel model;
+  private IndexPredicate predicate;
+  private Boolean sparse;
+  private int[] predicateColumnNums;
 
   /**
    * Constructs a BTreeSerializer
@@ -22,11 +31,16 @@ public class BTreeSerializer {
   public BTreeSerializer(String indexFilePath) {
     initFileHandlers(indexFilePath);
     initHeader();
+    this.sparse = false;
   }
 
   private void initFileHandlers(String indexFilePath) {
     try {
-      this.fout = new FileOutputStream(indexFilePath);
+      // The index is written to a temporary file and renamed into place once complete, so readers
+      // of the current index never see a partially written file
+      this.indexFilePath = indexFilePath;
+      this.tempFilePath = IndexFile.getTempFilePath(indexFilePath);
+      this.fout = new FileOutputStream(tempFilePath);
       this.fc = fout.getChannel();
       this.buffer = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
     } catch (IOException e) {
@@ -59,8 +73,19 @@ public class BTreeSerializer {
    * @param rootAddress the address of the root node
    * @param numLeaves the number of leaves in the tree
    * @param order the order of the tree
+   * @param height the number of levels in the tree, including the leaf layer
+   * @param minKey the smallest key in the tree
+   * @param maxKey the largest key in the tree
+   * @param numRecords the number of records in the tree
    */
-  public void serializeHeader(int rootAddress, int numLeaves, int order) {
+  public void serializeHeader(
+      int rootAddress,
+      int numLeaves,
+      int order,
+      int height,
+      int minKey,
+      int maxKey,
+      int numRecords) {
     try {
       // Address of the root
       buffer.putInt(rootAddress);
@@ -68,6 +93,30 @@ public class BTreeSerializer {
       buffer.putInt(numLeaves);
       // Order of the tree
       buffer.putInt(order);
+      // Height of the tree
+      buffer.putInt(height);
+      // Smallest and largest key, and number of records in the tree
+      buffer.putInt(minKey);
+      buffer.putInt(maxKey);
+      buffer.putInt(numRecords);
+      // Kind of the index (0 for index node levels, 1 for a learned model), number of model
+      // segments and model error bound
+      buffer.putInt(model == null ? 0 : 1);
+      buffer.putInt(model == null ? 0 : model.getNumSegments());
+      buffer.putInt(model == null ? 0 : model.getErrorBound());
+      // Density of the index (0 for one entry per tuple, 1 for one entry per relation page)
+      buffer.putInt(sparse ? 1 : 0);
+      // Predicate of a partial index: the number of column ranges, then the position of the column
+      // in the table and the bounds of its range for each
+      buffer.putInt(predicate == null ? 0 : predicate.size());
+      if (predicate != null) {
+        int i = 0;
+        for (String columnName : predicate.getColumnNames()) {
+          buffer.putInt(predicateColumnNums[i++]);
+          buffer.putInt(predicate.getLow(columnName));
+          buffer.putInt(predicate.getHigh(columnName));
+        }
+      }
       setZeros();
 
       buffer.flip();
@@ -78,6 +127,27 @@ public class BTreeSerializer {
     }
   }
 
+  /**
+   * Records that the index is sparse, which is written to the header
+   *
+   * @param sparse whether the index holds one entry per relation page instead of per tuple
+   */
+  public void setSparse(boolean sparse) {
+    this.sparse = sparse;
+  }
+
+  /**
+   * Records the predicate of a partial index, which is written to the header
+   *
+   * @param predicate the predicate every indexed tuple satisfies
+   * @param columnNums the position of every column of the predicate in the indexed table, in the
+   *     order of {@link IndexPredicate#getColumnNames()}
+   */
+  public void setPredicate(IndexPredicate predicate, int[] columnNums) {
+    this.predicate = predicate;
+    this.predicateColumnNums = columnNums;
+  }
+
   /**
    * Serializes the given InternalNode
    *
@@ -93,6 +163,10 @@ public class BTreeSerializer {
     for (Node child : internalNode.getChildren()) {
       buffer.putInt(child.getAddress());
     }
+
+    for (Node child : internalNode.getChildren()) {
+      buffer.putInt(child.getNumRecords()); // Number of records below the child
+    }
   }
 
   /**
@@ -101,6 +175,12 @@ public class BTreeSerializer {
    * @param leafNode the leaf node to serialize
    */
   private void serializeLeafNode(LeafNode leafNode) {
+    int size = 2 * Constants.IO.INT_SIZE;
+    for (Integer key : leafNode.getKeys()) {
+      size += (2 + 2 * leafNode.getRecords(key).size()) * Constants.IO.INT_SIZE;
+    }
+    checkLeafSpace(size);
+
     buffer.putInt(0); // Flag indicating it's a leaf node
     buffer.putInt(leafNode.getNodeSize()); // Number of keys in the node
 
@@ -115,6 +195,34 @@ public class BTreeSerializer {
     }
   }
 
+  /**
+   * Checks that leaf content of the given size leaves room for the sibling addresses at the end of
+   * the page, which would otherwise overwrite its last record
+   *
+   * @param size the number of bytes of keys and records on the leaf page
+   * @throws IllegalStateException if the content does not fit
+   */
+  private void checkLeafSpace(int size) {
+    if (size > LeafPage.PREVIOUS_OFFSET) {
+      throw new IllegalStateException(
+          "Leaf page content of "
+              + size
+              + " bytes does not fit in "
+              + LeafPage.PREVIOUS_OFFSET
+              + " bytes; lower the order or the number of duplicate keys");
+    }
+  }
+
+  /**
+   * Writes the addresses of the neighbours of the given leaf node at the end of its page
+   *
+   * @param leafNode the leaf node whose page is in the buffer
+   */
+  private void serializeSiblings(LeafNode leafNode) {
+    buffer.putInt(LeafPage.PREVIOUS_OFFSET, leafNode.getPreviousAddress());
+    buffer.putInt(LeafPage.NEXT_OFFSET, leafNode.getNextAddress());
+  }
+
   /**
    * Serialize all nodes in the given array of nodes
    *
@@ -129,6 +237,9 @@ public class BTreeSerializer {
           serializeInternalNode((InternalNode) node);
         }
         setZeros();
+        if (node.isLeafNode()) {
+          serializeSiblings((LeafNode) node);
+        }
         buffer.flip();
         fc.write(buffer);
         buffer.clear();
@@ -138,14 +249,191 @@ public class BTreeSerializer {
     }
   }
 
-  /** Clears the buffer and closes the file channel and file output stream */
+  /** Starts encoding a new leaf page in the buffer */
+  public void beginLeafPage() {
+    buffer.putInt(0); // Flag indicating it's a leaf node
+    buffer.putInt(0); // Number of keys in the node, set once the page is complete
+    leafSize = 0;
+    recordCountPosition = null;
+  }
+
+  /**
+   * Adds a key to the leaf page being encoded. The records of the key are added afterwards.
+   *
+   * @param key the key to add
+   */
+  public void addLeafKey(int key) {
+    finishLeafKey();
+    checkLeafSpace(buffer.position() + 2 * Constants.IO.INT_SIZE);
+    buffer.putInt(key);
+    recordCountPosition = buffer.position();
+    buffer.putInt(0); // Number of records for the key, set once the key is complete
+    recordCount = 0;
+    leafSize++;
+  }
+
+  /**
+   * Adds a record to the last key of the leaf page being encoded
+   *
+   * @param pageId the page of the tuple
+   * @param tupleId the position of the tuple on its page
+   */
+  public void addLeafRecord(int pageId, int tupleId) {
+    checkLeafSpace(buffer.position() + 2 * Constants.IO.INT_SIZE);
+    buffer.putInt(pageId);
+    buffer.putInt(tupleId);
+    recordCount++;
+  }
+
+  /** Writes the number of records of the last key added to the leaf page */
+  private void finishLeafKey() {
+    if (recordCountPosition != null) {
+      buffer.putInt(recordCountPosition, recordCount);
+    }
+  }
+
+  /**
+   * Completes the leaf page being encoded and writes it to the file
+   *
+   * @param previousAddress the address of the previous leaf, or 0 if there is none
+   * @param nextAddress the address of the next leaf, or 0 if there is none
+   */
+  public void endLeafPage(int previousAddress, int nextAddress) {
+    try {
+      finishLeafKey();
+      buffer.putInt(Constants.IO.INT_SIZE, leafSize);
+      setZeros();
+      buffer.putInt(LeafPage.PREVIOUS_OFFSET, previousAddress);
+      buffer.putInt(LeafPage.NEXT_OFFSET, nextAddress);
+      buffer.flip();
+      fc.write(buffer);
+      buffer.clear();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Serializes an index node over a range of nodes in the layer below
+   *
+   * @param childKeys the smallest key of every node in the layer below
+   * @param childAddresses the address of every node in the layer below
+   * @param childCounts the number of records below every node in the layer below
+   * @param start the position of the first child of the index node in the layer below
+   * @param size the number of children of the index node
+   */
+  public void serializeIndexPage(
+      int[] childKeys, int[] childAddresses, int[] childCounts, int start, int size) {
+    try {
+      buffer.putInt(1); // Flag indicating it's an index node
+      buffer.putInt(size - 1); // Number of keys in the node
+      for (int i = start + 1; i < start + size; i++) {
+        buffer.putInt(childKeys[i]);
+      }
+      for (int i = start; i < start + size; i++) {
+        buffer.putInt(childAddresses[i]);
+      }
+      for (int i = start; i < start + size; i++) {
+        buffer.putInt(childCounts[i]);
+      }
+      setZeros();
+      buffer.flip();
+      fc.write(buffer);
+      buffer.clear();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Serializes the segments of a learned model in place of the index node levels. The header
+   * written afterwards records that the file holds a learned index.
+   *
+   * @param model the model mapping keys to leaf addresses
+   * @return the number of model pages written
+   */
+  public int serializeModel(PiecewiseLinearModel model) {
+    this.model = model;
+    int numPages = PiecewiseLinearModel.getNumPages(model.getNumSegments());
+    try {
+      for (int page = 0; page < numPages; page++) {
+        int first = page * PiecewiseLinearModel.SEGMENTS_PER_PAGE;
+        int last = Math.min(first + PiecewiseLinearModel.SEGMENTS_PER_PAGE, model.getNumSegments());
+        for (int segment = first; segment < last; segment++) {
+          model.serializeSegment(segment, buffer);
+        }
+        setZeros();
+        buffer.flip();
+        fc.write(buffer);
+        buffer.clear();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return numPages;
+  }
+
+  /**
+   * Serializes the number of records in the leaves before every leaf, so a learned index can count
+   * the records up to a key with the leaf alone
+   *
+   * @param leafCounts the number of records in every leaf, in address order
+   * @return the number of pages written
+   */
+  public int serializeRecordCounts(int[] leafCounts) {
+    int countsPerPage = Constants.IO.PAGE_SIZE / Constants.IO.INT_SIZE;
+    int numPages = (leafCounts.length + countsPerPage - 1) / countsPerPage;
+    try {
+      int recordsBefore = 0;
+      for (int page = 0; page < numPages; page++) {
+        int first = page * countsPerPage;
+        for (int leaf = first; leaf < Math.min(first + countsPerPage, leafCounts.length); leaf++) {
+          buffer.putInt(recordsBefore);
+          recordsBefore += leafCounts[leaf];
+        }
+        setZeros();
+        buffer.flip();
+        fc.write(buffer);
+        buffer.clear();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return numPages;
+  }
+
+  /**
+   * Clears the buffer, forces the written file to disk, closes the file channel and file output
+   * stream, and atomically replaces the index file with the written file
+   */
   public void close() {
+    if (fout == null) return;
     try {
       buffer.clear();
+      fc.force(true);
       fc.close();
       fout.close();
+      fout = null;
+    } catch (IOException e) {
+      e.printStackTrace();
+      abort();
+      return;
+    }
+    IndexFile.publish(tempFilePath, indexFilePath);
+  }
+
+  /**
+   * Closes the temporary file of a build that did not complete and deletes it, leaving the index
+   * file unchanged. Does nothing once the serializer has been closed.
+   */
+  public void abort() {
+    if (fout == null) return;
+    try {
+      fout.close();
     } catch (IOException e) {
       e.printStackTrace();
     }
+    fout = null;
+    IndexFile.discard(tempFilePath);
   }
 }
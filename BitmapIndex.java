@@ -0,0 +1,125 @@
+package btree;
+
+import common.DBCatalog;
+import common.Index;
+import common.Record;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import net.sf.jsqlparser.schema.Column;
+import util.Constants;
+
+/**
+ * BitmapIndex represents a bitmap index for columns with few distinct values. Every distinct key
+ * has a compressed bitmap of the positions of the rows holding it, where the position of the record
+ * (pageId, tupleId) is pageId * tuplesPerPage + tupleId.
+ *
+ * <p>The file starts with a header page (number of keys, tuples per page, number of rows, number of
+ * bitmap bytes), followed by the key and serialized bitmap of every key in ascending key order.
+ */
+public class BitmapIndex {
+  private Column column;
+  private String indexFilePath;
+  private TreeMap<Integer, RoaringBitmap> bitmaps;
+
+  /**
+   * Constructs a BitmapIndex object
+   *
+   * @param index the index object containing information about the index to build
+   */
+  public BitmapIndex(Index index) {
+    this.column = index.getIndexColumn();
+    this.indexFilePath = index.getIndexFilePath();
+    this.bitmaps = new TreeMap<Integer, RoaringBitmap>();
+  }
+
+  /**
+   * Returns the number of tuples stored on a full page of the given table. Every page starts with
+   * the tuple size and the number of tuples on the page.
+   *
+   * @param tableName the name of the table
+   * @return the number of tuples on a full page
+   */
+  public static int getTuplesPerPage(String tableName) {
+    int tupleSize = DBCatalog.getDB().getTableColumns(tableName).size() * Constants.IO.INT_SIZE;
+    return (Constants.IO.PAGE_SIZE - 2 * Constants.IO.INT_SIZE) / tupleSize;
+  }
+
+  /**
+   * Returns the map of every key to the bitmap of its row positions
+   *
+   * @return the map of key, bitmap pairs
+   */
+  public TreeMap<Integer, RoaringBitmap> getBitmaps() {
+    return bitmaps;
+  }
+
+  /** Constructs and serializes the bitmap index */
+  public void constructAndSerialize() {
+    int tuplesPerPage = getTuplesPerPage(column.getTable().getName());
+    int numRows = 0;
+
+    for (Map.Entry<Integer, ArrayList<Record>> entry : Btree.getDataEntries(column).entrySet()) {
+      RoaringBitmap bitmap = new RoaringBitmap();
+      for (Record record : entry.getValue()) {
+        bitmap.add(record.getPageId() * tuplesPerPage + record.getTupleId());
+      }
+      bitmaps.put(entry.getKey(), bitmap);
+      numRows += entry.getValue().size();
+    }
+
+    serialize(tuplesPerPage, numRows);
+  }
+
+  /**
+   * Writes the header page and the bitmaps to a temporary file and renames it over the index file
+   *
+   * @param tuplesPerPage the number of tuples on a full page of the table
+   * @param numRows the number of rows in the table
+   */
+  private void serialize(int tuplesPerPage, int numRows) {
+    int numBytes = 0;
+    for (RoaringBitmap bitmap : bitmaps.values()) {
+      numBytes += Constants.IO.INT_SIZE + bitmap.getSerializedSize();
+    }
+
+    String tempFilePath = IndexFile.getTempFilePath(indexFilePath);
+    boolean written = false;
+    try (FileOutputStream fout = new FileOutputStream(tempFilePath)) {
+      FileChannel fc = fout.getChannel();
+      ByteBuffer header = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+      header.putInt(bitmaps.size());
+      header.putInt(tuplesPerPage);
+      header.putInt(numRows);
+      header.putInt(numBytes);
+      header.clear();
+      fc.write(header);
+
+      ByteBuffer buffer = ByteBuffer.allocate(numBytes);
+      for (Map.Entry<Integer, RoaringBitmap> entry : bitmaps.entrySet()) {
+        buffer.putInt(entry.getKey());
+        entry.getValue().serialize(buffer);
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        fc.write(buffer);
+      }
+      fc.force(true);
+      written = true;
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      // A failed write leaves the index file unchanged and no temporary file behind
+      if (!written) {
+        IndexFile.discard(tempFilePath);
+      }
+    }
+    if (written) {
+      IndexFile.publish(tempFilePath, indexFilePath);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package btree;
+
+import common.Index;
+import java.nio.ByteBuffer;
+import java.util.TreeMap;
+import util.Constants;
+
+/**
+ * BitmapIndexDeserializer loads a bitmap index into memory. Selections over several low-cardinality
+ * columns combine the bitmaps of their predicates with {@link RoaringBitmap#and}, {@link
+ * RoaringBitmap#or} and {@link #not} before a {@link BitmapScan} visits the matching rows.
+ */
+public class BitmapIndexDeserializer {
+  private Integer tuplesPerPage;
+  private Integer numRows;
+  private TreeMap<Integer, RoaringBitmap> bitmaps;
+
+  /**
+   * Constructs a BitmapIndexDeserializer and reads all bitmaps of the index
+   *
+   * @param index the index object containing information about the index the bitmaps were
+   *     constructed on
+   */
+  public BitmapIndexDeserializer(Index index) {
+    this.bitmaps = new TreeMap<Integer, RoaringBitmap>();
+
+    IndexFile file = IndexFile.acquire(index.getIndexFilePath());
+    ByteBuffer header = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+    file.read(header, 0);
+    header.flip();
+    int numKeys = header.getInt();
+    this.tuplesPerPage = header.getInt();
+    this.numRows = header.getInt();
+    int numBytes = header.getInt();
+
+    ByteBuffer buffer = ByteBuffer.allocate(numBytes);
+    file.read(buffer, Constants.IO.PAGE_SIZE);
+    buffer.flip();
+    file.release();
+    for (int i = 0; i < numKeys; i++) {
+      int key = buffer.getInt();
+      bitmaps.put(key, RoaringBitmap.deserialize(buffer));
+    }
+  }
+
+  /**
+   * Returns the bitmap of the rows whose key is equal to the given key
+   *
+   * @param key the key
+   * @return the bitmap of matching rows, empty if the key does not occur
+   */
+  public RoaringBitmap getBitmap(int key) {
+    RoaringBitmap bitmap = bitmaps.get(key);
+    return bitmap == null ? new RoaringBitmap() : bitmap;
+  }
+
+  /**
+   * Returns the bitmap of the rows whose key is in the interval [lowkey, highkey]
+   *
+   * @param lowkey the lower bound
+   * @param highkey the upper bound
+   * @return the bitmap of matching rows
+   */
+  public RoaringBitmap getRangeBitmap(int lowkey, int highkey) {
+    RoaringBitmap result = new RoaringBitmap();
+    if (lowkey > highkey) return result;
+
+    for (RoaringBitmap bitmap : bitmaps.subMap(lowkey, true, highkey, true).values()) {
+      result = result.or(bitmap);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the bitmap of the rows that are not in the given bitmap
+   *
+   * @param bitmap the bitmap to negate
+   * @return the bitmap of all other rows of the table
+   */
+  public RoaringBitmap not(RoaringBitmap bitmap) {
+    return RoaringBitmap.range(numRows).andNot(bitmap);
+  }
+
+  /**
+   * Returns the number of tuples on a full page of the indexed table
+   *
+   * @return the number of tuples per page
+   */
+  public Integer getTuplesPerPage() {
+    return tuplesPerPage;
+  }
+
+  /**
+   * Returns the number of rows in the indexed table
+   *
+   * @return the number of rows
+   */
+  public Integer getNumRows() {
+    return numRows;
+  }
+}
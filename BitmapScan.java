@@ -0,0 +1,52 @@
+package btree;
+
+import common.Record;
+
+/**
+ * BitmapScan returns the records of the rows in a bitmap, in the order they are stored in the
+ * table. It takes the place of the B+ tree cursor when a selection is answered from bitmap indexes,
+ * so every data page is visited at most once.
+ */
+public class BitmapScan {
+  private int[] positions;
+  private Integer tuplesPerPage;
+  private Integer nextPosition;
+
+  /**
+   * Constructs a BitmapScan
+   *
+   * @param bitmap the bitmap of the rows to return, usually combined from several predicates
+   * @param tuplesPerPage the number of tuples on a full page of the table
+   */
+  public BitmapScan(RoaringBitmap bitmap, int tuplesPerPage) {
+    this.positions = bitmap.toArray();
+    this.tuplesPerPage = tuplesPerPage;
+    this.nextPosition = 0;
+  }
+
+  /**
+   * Returns the number of rows the scan returns
+   *
+   * @return the number of rows
+   */
+  public int size() {
+    return positions.length;
+  }
+
+  /**
+   * Returns the record of the next row in the bitmap
+   *
+   * @return the next record, or null if all rows have been returned
+   */
+  public Record getNextRecord() {
+    if (nextPosition >= positions.length) return null;
+
+    int position = positions[nextPosition++];
+    return new Record(position / tuplesPerPage, position % tuplesPerPage);
+  }
+
+  /** Resets the scan to the first row */
+  public void reset() {
+    nextPosition = 0;
+  }
+}
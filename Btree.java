@@ -4,6 +4,7 @@ import common.DBCatalog;
 import common.Index;
 import common.Record;
 import common.Tuple;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -14,11 +15,17 @@ import operator.ScanOperator;
 /** Btree represents a particular B+ index tree */
 public class Btree {
   private Node root;
+  private Index index;
   private Integer order;
   private Column column;
   private Boolean isClustered;
   private Integer currentAddress;
   private ArrayList<Integer> keys;
+  private Integer height;
+  private Long arenaBudget;
+  private Integer learnedErrorBound;
+  private IndexPredicate predicate;
+  private Boolean sparse;
   private BTreeSerializer serializer;
 
   /**
@@ -28,11 +35,17 @@ public class Btree {
    */
   public Btree(Index index) {
     this.root = null;
+    this.index = index;
     this.order = index.getIndexOrder();
     this.column = index.getIndexColumn();
     this.isClustered = index.isClustered();
     this.currentAddress = 1;
-    this.serializer = new BTreeSerializer(index.getIndexFilePath());
+    this.height = 0;
+    this.arenaBudget = 0L;
+    this.learnedErrorBound = null;
+    this.predicate = null;
+    this.sparse = false;
+    this.serializer = null;
   }
 
   /**
@@ -62,6 +75,64 @@ public class Btree {
     return isClustered;
   }
 
+  /**
+   * Returns the number of levels in the tree, counting the root and the leaf layer
+   *
+   * @return the height of the tree
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Builds the tree in an off-heap arena with the given byte budget instead of on the Java heap.
+   * Data entries are sorted and leaves are encoded outside of the heap, and entries that do not fit
+   * in the budget are spilled to the temp directory. No node objects are created, so {@link
+   * #getRoot()} returns null after an off-heap build.
+   *
+   * @param budget the number of bytes of data entries kept in memory, or 0 to build on the heap
+   */
+  public void setArenaBudget(long budget) {
+    this.arenaBudget = budget;
+  }
+
+  /**
+   * Builds a learned index instead of a B+ tree. The leaf layer is the same, but instead of index
+   * node levels the file stores a piecewise linear model that predicts the leaf of a key within the
+   * given error bound, so a lookup reads the predicted leaf and at most a few of its neighbours.
+   * Learned indexes suit large, read-mostly indexes; no node objects are created above the leaves,
+   * so {@link #getRoot()} returns null after a learned build.
+   *
+   * @param errorBound the largest distance in leaves between a predicted and a real leaf address
+   */
+  public void setLearned(int errorBound) {
+    this.learnedErrorBound = errorBound;
+  }
+
+  /**
+   * Builds a partial index holding only the tuples that satisfy the given predicate. The predicate
+   * is recorded in the header of the index file, and a query may use the index only if its
+   * condition implies the predicate (see {@link IndexPredicate#isImpliedBy}).
+   *
+   * @param predicate the predicate tuples must satisfy to be indexed, or null to index every tuple
+   */
+  public void setPredicate(IndexPredicate predicate) {
+    this.predicate = predicate;
+  }
+
+  /**
+   * Builds a sparse index with one entry per page of the relation, mapping the first key of the
+   * page to its first tuple. Only a clustered index over every tuple can be sparse: its relation is
+   * sorted on the key, so a lookup finds the page where the key range starts in the index and scans
+   * the relation from there. The index shrinks by the number of tuples per page, so it usually fits
+   * in a single leaf.
+   *
+   * @param sparse whether to build a sparse index
+   */
+  public void setSparse(boolean sparse) {
+    this.sparse = sparse;
+  }
+
   /**
    * Sets the list of keys in the tree
    *
@@ -72,16 +143,32 @@ public class Btree {
   }
 
   /**
-   * Returns the map of all key, record pairs in the tree
+   * Returns the map of all key, record pairs of an index on the given column. Every tuple of the
+   * column's table is identified by the number of its page and its position on that page.
    *
-   * @return the map of all key, record pairs in the tree
+   * @param column the column the index is built on
+   * @return the map of all key, record pairs in the index
    */
-  private TreeMap<Integer, ArrayList<Record>> getDataEntries() {
+  public static TreeMap<Integer, ArrayList<Record>> getDataEntries(Column column) {
+    return getDataEntries(column, null);
+  }
+
+  /**
+   * Returns the map of the key, record pairs of the tuples that satisfy the given predicate. Tuples
+   * that do not satisfy it get no entry but still count towards the position of later tuples.
+   *
+   * @param column the column the index is built on
+   * @param predicate the predicate of a partial index, or null to index every tuple
+   * @return the map of all key, record pairs in the index
+   */
+  public static TreeMap<Integer, ArrayList<Record>> getDataEntries(
+      Column column, IndexPredicate predicate) {
     TreeMap<Integer, ArrayList<Record>> dataEntries = new TreeMap<Integer, ArrayList<Record>>();
     String tableName = column.getTable().getName();
     ArrayList<Column> outputSchema = DBCatalog.getDB().getTableColumns(tableName);
     ScanOperator scanner = new ScanOperator(outputSchema);
     int indexColumnNum = scanner.getColumnNumberFromSchema(column);
+    int[] predicateColumnNums = predicate == null ? null : predicate.getColumnNumbers(outputSchema);
 
     int pageId = 0;
     int tupleId = 0;
@@ -89,6 +176,10 @@ public class Btree {
 
     while ((tuples = scanner.getNextPage()) != null) {
       for (Tuple tuple : tuples) {
+        if (predicate != null && !predicate.matches(tuple, predicateColumnNums)) {
+          tupleId++;
+          continue;
+        }
         int key = tuple.getElementAtIndex(indexColumnNum);
 
         if (dataEntries.containsKey(key)) {
@@ -107,6 +198,37 @@ public class Btree {
     return dataEntries;
   }
 
+  /**
+   * Returns the map of the key, record pairs of a sparse index on the given column: the key of the
+   * first tuple of every page of the column's table, mapped to that tuple
+   *
+   * @param column the column the index is built on
+   * @return the map of all key, record pairs in the index
+   */
+  public static TreeMap<Integer, ArrayList<Record>> getPageEntries(Column column) {
+    TreeMap<Integer, ArrayList<Record>> dataEntries = new TreeMap<Integer, ArrayList<Record>>();
+    String tableName = column.getTable().getName();
+    ArrayList<Column> outputSchema = DBCatalog.getDB().getTableColumns(tableName);
+    ScanOperator scanner = new ScanOperator(outputSchema);
+    int indexColumnNum = scanner.getColumnNumberFromSchema(column);
+
+    int pageId = 0;
+    ArrayList<Tuple> tuples;
+
+    while ((tuples = scanner.getNextPage()) != null) {
+      if (!tuples.isEmpty()) {
+        int key = tuples.get(0).getElementAtIndex(indexColumnNum);
+        // Equal keys spanning several pages map to each of those pages, in page order
+        if (!dataEntries.containsKey(key)) {
+          dataEntries.put(key, new ArrayList<Record>());
+        }
+        dataEntries.get(key).add(new Record(pageId, 0));
+      }
+      pageId++;
+    }
+    return dataEntries;
+  }
+
   /**
    * Creates a leaf node in the tree
    *
@@ -128,42 +250,69 @@ public class Btree {
   }
 
   /**
-   * Returns the list of leaf nodes in the current leaf layer
+   * Returns the number of keys in each leaf of a leaf layer holding the given number of keys. Every
+   * leaf is full except the last two, which split the remainder evenly if it would otherwise
+   * underflow.
    *
-   * @param dataEntries the map of key, record pairs
-   * @return the list of nodes in the current leaf layer
+   * @param numEntries the number of distinct keys in the tree
+   * @return the list of leaf sizes, in key order
    */
-  private ArrayList<Node> getLeafLayer(TreeMap<Integer, ArrayList<Record>> dataEntries) {
-    ArrayList<Node> leafNodes = new ArrayList<Node>();
-    int processedEntries = 0;
-    int remainingEntries = dataEntries.size();
+  private ArrayList<Integer> getLeafSizes(int numEntries) {
+    ArrayList<Integer> leafSizes = new ArrayList<Integer>();
+    int remainingEntries = numEntries;
 
     while (remainingEntries >= order
         && !(remainingEntries > 2 * order && remainingEntries < 3 * order)) {
       int leafSize = Math.min(2 * order, remainingEntries);
-      leafNodes.add(createLeafNode(dataEntries, leafSize, processedEntries));
-      processedEntries += leafSize;
+      leafSizes.add(leafSize);
       remainingEntries -= leafSize;
-      currentAddress++;
     }
 
     if (remainingEntries > 2 * order && remainingEntries < 3 * order) {
       int firstLeafEntries = remainingEntries / 2;
-      leafNodes.add(createLeafNode(dataEntries, firstLeafEntries, processedEntries));
-      processedEntries += firstLeafEntries;
-      remainingEntries -= firstLeafEntries;
-      currentAddress++;
+      leafSizes.add(firstLeafEntries);
+      leafSizes.add(remainingEntries - firstLeafEntries);
+    } else if (remainingEntries > 0) {
+      // Fewer keys than the order, as in a small partial index, fit in a single leaf
+      leafSizes.add(remainingEntries);
+    }
 
-      int secondLeafEntries = remainingEntries;
-      leafNodes.add(createLeafNode(dataEntries, secondLeafEntries, processedEntries));
-      processedEntries += secondLeafEntries;
-      remainingEntries -= secondLeafEntries;
+    return leafSizes;
+  }
+
+  /**
+   * Returns the list of leaf nodes in the current leaf layer
+   *
+   * @param dataEntries the map of key, record pairs
+   * @return the list of nodes in the current leaf layer
+   */
+  private ArrayList<Node> getLeafLayer(TreeMap<Integer, ArrayList<Record>> dataEntries) {
+    ArrayList<Node> leafNodes = new ArrayList<Node>();
+    int processedEntries = 0;
+
+    for (int leafSize : getLeafSizes(dataEntries.size())) {
+      leafNodes.add(createLeafNode(dataEntries, leafSize, processedEntries));
+      processedEntries += leafSize;
       currentAddress++;
     }
 
+    linkLeaves(leafNodes);
     return leafNodes;
   }
 
+  /**
+   * Links every leaf node to its neighbours so the leaf layer can be scanned in both directions
+   *
+   * @param leafNodes the list of nodes in the leaf layer, in key order
+   */
+  private void linkLeaves(ArrayList<Node> leafNodes) {
+    for (int i = 0; i < leafNodes.size(); i++) {
+      int previousAddress = i > 0 ? leafNodes.get(i - 1).getAddress() : 0;
+      int nextAddress = i + 1 < leafNodes.size() ? leafNodes.get(i + 1).getAddress() : 0;
+      ((LeafNode) leafNodes.get(i)).setSiblings(previousAddress, nextAddress);
+    }
+  }
+
   /**
    * Creates a new internal tree node
    *
@@ -188,41 +337,48 @@ public class Btree {
   }
 
   /**
-   * Returns a list of internal nodes in the current layer of the tree
+   * Returns the number of children of each internal node in a layer above the given number of child
+   * nodes. Every node is full except the last two, which split the remainder evenly if it would
+   * otherwise underflow.
    *
-   * @param childNodes the list of child nodes in the preceding layer of the tree
-   * @return the list of nodes in the current layer
+   * @param numChildren the number of nodes in the layer below
+   * @return the list of node sizes, in key order
    */
-  private ArrayList<Node> getIndexLayer(ArrayList<Node> childNodes) {
-    ArrayList<Node> indexNodes = new ArrayList<Node>();
-    int processedEntries = 0;
-    int remainingEntries = childNodes.size();
+  private ArrayList<Integer> getIndexSizes(int numChildren) {
+    ArrayList<Integer> nodeSizes = new ArrayList<Integer>();
+    int remainingEntries = numChildren;
 
     while (remainingEntries >= order
         && !(remainingEntries > 2 * order + 1 && remainingEntries < 3 * order + 2)) {
       int indexNodeSize = Math.min(remainingEntries, 2 * order + 1);
-      indexNodes.add(createIndexNodes(childNodes, indexNodeSize, processedEntries));
-      processedEntries += indexNodeSize;
+      nodeSizes.add(indexNodeSize);
       remainingEntries -= indexNodeSize;
-      currentAddress++;
     }
     if (remainingEntries > 2 * order + 1 && remainingEntries < 3 * order + 2) {
       int firstNodeEntries = remainingEntries / 2;
-      indexNodes.add(createIndexNodes(childNodes, firstNodeEntries, processedEntries));
-      processedEntries += firstNodeEntries;
-      remainingEntries -= firstNodeEntries;
-      currentAddress++;
-
-      int secondNodeEntries = remainingEntries;
-      indexNodes.add(createIndexNodes(childNodes, secondNodeEntries, processedEntries));
-      processedEntries += secondNodeEntries;
-      remainingEntries -= secondNodeEntries;
-      currentAddress++;
+      nodeSizes.add(firstNodeEntries);
+      nodeSizes.add(remainingEntries - firstNodeEntries);
     } else if (remainingEntries > 0) {
       // Root node
-      indexNodes.add(createIndexNodes(childNodes, remainingEntries, processedEntries));
-      processedEntries += remainingEntries;
-      remainingEntries = 0;
+      nodeSizes.add(remainingEntries);
+    }
+
+    return nodeSizes;
+  }
+
+  /**
+   * Returns a list of internal nodes in the current layer of the tree
+   *
+   * @param childNodes the list of child nodes in the preceding layer of the tree
+   * @return the list of nodes in the current layer
+   */
+  private ArrayList<Node> getIndexLayer(ArrayList<Node> childNodes) {
+    ArrayList<Node> indexNodes = new ArrayList<Node>();
+    int processedEntries = 0;
+
+    for (int indexNodeSize : getIndexSizes(childNodes.size())) {
+      indexNodes.add(createIndexNodes(childNodes, indexNodeSize, processedEntries));
+      processedEntries += indexNodeSize;
       currentAddress++;
     }
 
@@ -238,10 +394,230 @@ public class Btree {
     root = node;
   }
 
-  /** Constructs and serializes the tree */
+  /**
+   * Adds the data entry of every tuple in the table that satisfies the predicate of the index to
+   * the given arena, or of the first tuple of every page for a sparse index
+   *
+   * @param arena the arena receiving the (key, pageId, tupleId) entries
+   */
+  private void getDataEntries(BuildArena arena) {
+    String tableName = column.getTable().getName();
+    ArrayList<Column> outputSchema = DBCatalog.getDB().getTableColumns(tableName);
+    ScanOperator scanner = new ScanOperator(outputSchema);
+    int indexColumnNum = scanner.getColumnNumberFromSchema(column);
+    int[] predicateColumnNums = predicate == null ? null : predicate.getColumnNumbers(outputSchema);
+
+    int pageId = 0;
+    ArrayList<Tuple> tuples;
+
+    while ((tuples = scanner.getNextPage()) != null) {
+      for (int tupleId = 0; tupleId < tuples.size(); tupleId++) {
+        Tuple tuple = tuples.get(tupleId);
+        if (predicate != null && !predicate.matches(tuple, predicateColumnNums)) continue;
+        arena.add(tuple.getElementAtIndex(indexColumnNum), pageId, tupleId);
+        // A sparse index only holds the first tuple of every page
+        if (sparse) break;
+      }
+      pageId++;
+    }
+  }
+
+  /**
+   * Returns the number of distinct keys among the sorted entries of the arena
+   *
+   * @param arena the finished arena
+   * @return the number of distinct keys
+   */
+  private int countKeys(BuildArena arena) {
+    int numKeys = 0;
+    int[] entry = new int[3];
+    Integer previousKey = null;
+    arena.rewind();
+    while (arena.hasNext()) {
+      arena.next(entry);
+      if (previousKey == null || entry[0] != previousKey) {
+        numKeys++;
+        previousKey = entry[0];
+      }
+    }
+    arena.rewind();
+    return numKeys;
+  }
+
+  /**
+   * Streams the sorted entries of the arena into leaf pages
+   *
+   * @param arena the finished arena
+   * @param leafSizes the number of keys in each leaf
+   * @param smallestKeys receives the smallest key of each leaf
+   * @param addresses receives the address of each leaf
+   * @param counts receives the number of records in each leaf
+   * @return the largest key in the leaf layer
+   */
+  private int serializeLeafLayer(
+      BuildArena arena,
+      ArrayList<Integer> leafSizes,
+      int[] smallestKeys,
+      int[] addresses,
+      int[] counts) {
+    int[] entry = new int[3];
+    if (!arena.hasNext()) return 0;
+    arena.next(entry);
+    int firstAddress = currentAddress;
+    int lastAddress = firstAddress + leafSizes.size() - 1;
+
+    for (int leaf = 0; leaf < leafSizes.size(); leaf++) {
+      addresses[leaf] = currentAddress;
+      smallestKeys[leaf] = entry[0];
+      serializer.beginLeafPage();
+
+      for (int i = 0; i < leafSizes.get(leaf); i++) {
+        int key = entry[0];
+        serializer.addLeafKey(key);
+        do {
+          serializer.addLeafRecord(entry[1], entry[2]);
+          counts[leaf]++;
+          if (!arena.hasNext()) break;
+          arena.next(entry);
+        } while (entry[0] == key);
+      }
+
+      int previousAddress = currentAddress > firstAddress ? currentAddress - 1 : 0;
+      int nextAddress = currentAddress < lastAddress ? currentAddress + 1 : 0;
+      serializer.endLeafPage(previousAddress, nextAddress);
+      currentAddress++;
+    }
+    return entry[0];
+  }
+
+  /**
+   * Serializes a learned model of the leaf layer and the record counts of the leaves in place of
+   * the index node levels
+   *
+   * @param leafKeys the first key of every leaf
+   * @param leafCounts the number of records in every leaf
+   * @return the address of the first model page, which is recorded as the root address
+   */
+  private int serializeModel(int[] leafKeys, int[] leafCounts) {
+    int modelAddress = currentAddress;
+    PiecewiseLinearModel model = PiecewiseLinearModel.fit(leafKeys, learnedErrorBound);
+    currentAddress += serializer.serializeModel(model);
+    currentAddress += serializer.serializeRecordCounts(leafCounts);
+    // A lookup reads only the leaf layer
+    height = 1;
+    return modelAddress;
+  }
+
+  /**
+   * Serializes the header of an index without entries, such as a partial index whose predicate no
+   * tuple satisfies. It has no leaves and no index nodes, and lookups on it return nothing.
+   */
+  private void serializeEmptyIndex() {
+    height = 0;
+    serializer.serializeHeader(0, 0, order, height, 0, 0, 0);
+    serializer.close();
+  }
+
+  /** Constructs and serializes the tree in an off-heap arena */
+  private void constructAndSerializeInArena() {
+    BuildArena arena = new BuildArena(arenaBudget, DBCatalog.getDB().getTempDirectory());
+    ArrayList<Integer> leafSizes;
+    int[] childKeys;
+    int[] childAddresses;
+    int[] childCounts;
+    int maxKey;
+    try {
+      getDataEntries(arena);
+      arena.finish();
+
+      // Create leaf layer and serialize it:
+      leafSizes = getLeafSizes(countKeys(arena));
+      childKeys = new int[leafSizes.size()];
+      childAddresses = new int[leafSizes.size()];
+      childCounts = new int[leafSizes.size()];
+      maxKey = serializeLeafLayer(arena, leafSizes, childKeys, childAddresses, childCounts);
+    } finally {
+      // The spilled entries are deleted even if spilling, merging or encoding a leaf fails
+      arena.close();
+    }
+    int minKey = childKeys.length > 0 ? childKeys[0] : 0;
+    int numRecords = arena.size();
+    if (leafSizes.isEmpty()) {
+      serializeEmptyIndex();
+      return;
+    }
+    height = 1;
+
+    if (learnedErrorBound != null) {
+      int modelAddress = serializeModel(childKeys, childCounts);
+      serializer.serializeHeader(
+          modelAddress, leafSizes.size(), order, height, minKey, maxKey, numRecords);
+      serializer.close();
+      return;
+    }
+
+    // Create and serialize index layers till root:
+    do {
+      ArrayList<Integer> nodeSizes = getIndexSizes(childKeys.length);
+      int[] nodeKeys = new int[nodeSizes.size()];
+      int[] nodeAddresses = new int[nodeSizes.size()];
+      int[] nodeCounts = new int[nodeSizes.size()];
+      int start = 0;
+      for (int node = 0; node < nodeSizes.size(); node++) {
+        nodeKeys[node] = childKeys[start];
+        nodeAddresses[node] = currentAddress;
+        for (int i = start; i < start + nodeSizes.get(node); i++) {
+          nodeCounts[node] += childCounts[i];
+        }
+        serializer.serializeIndexPage(
+            childKeys, childAddresses, childCounts, start, nodeSizes.get(node));
+        start += nodeSizes.get(node);
+        currentAddress++;
+      }
+      childKeys = nodeKeys;
+      childAddresses = nodeAddresses;
+      childCounts = nodeCounts;
+      height++;
+    } while (childKeys.length > 1);
+
+    // Serialize header page:
+    serializer.serializeHeader(
+        childAddresses[0], leafSizes.size(), order, height, minKey, maxKey, numRecords);
+    serializer.close();
+  }
+
+  /**
+   * Constructs and serializes the tree. The tree is written to a temporary file that replaces the
+   * index file once it is complete, so the index can be rebuilt while it is being read. If the
+   * build fails, the temporary file is deleted and the index file is left unchanged.
+   */
   public void constructAndSerialize() {
+    if (sparse && (!isClustered || predicate != null)) {
+      throw new IllegalStateException("A sparse index must be clustered and cover every tuple");
+    }
+    serializer = new BTreeSerializer(index.getIndexFilePath());
+    try {
+      serializer.setSparse(sparse);
+      if (predicate != null) {
+        ArrayList<Column> schema = DBCatalog.getDB().getTableColumns(column.getTable().getName());
+        serializer.setPredicate(predicate, predicate.getColumnNumbers(schema));
+      }
+      if (arenaBudget > 0) {
+        constructAndSerializeInArena();
+      } else {
+        constructAndSerializeOnHeap();
+      }
+    } finally {
+      // Does nothing once the serializer has published the file
+      serializer.abort();
+    }
+  }
+
+  /** Constructs and serializes the tree on the Java heap */
+  private void constructAndSerializeOnHeap() {
     // Create data entries
-    TreeMap<Integer, ArrayList<Record>> dataEntries = getDataEntries();
+    TreeMap<Integer, ArrayList<Record>> dataEntries =
+        sparse ? getPageEntries(column) : getDataEntries(column, predicate);
 
     // Set keys for generating leaf layer
     setKeys(dataEntries);
@@ -249,6 +625,33 @@ public class Btree {
     // Create leaf layer and serialize it:
     ArrayList<Node> leafNodes = getLeafLayer(dataEntries);
     serializer.serializeNodes(leafNodes);
+    if (leafNodes.isEmpty()) {
+      serializeEmptyIndex();
+      return;
+    }
+    height = 1;
+
+    if (learnedErrorBound != null) {
+      int[] leafKeys = new int[leafNodes.size()];
+      int[] leafCounts = new int[leafNodes.size()];
+      int numRecords = 0;
+      for (int i = 0; i < leafNodes.size(); i++) {
+        leafKeys[i] = leafNodes.get(i).getSmallestKey();
+        leafCounts[i] = leafNodes.get(i).getNumRecords();
+        numRecords += leafCounts[i];
+      }
+      int modelAddress = serializeModel(leafKeys, leafCounts);
+      serializer.serializeHeader(
+          modelAddress,
+          leafNodes.size(),
+          order,
+          height,
+          dataEntries.isEmpty() ? 0 : dataEntries.firstKey(),
+          dataEntries.isEmpty() ? 0 : dataEntries.lastKey(),
+          numRecords);
+      serializer.close();
+      return;
+    }
 
     ArrayList<Node> indexNodes;
     // Handle special condition where there is only one leaf node
@@ -264,6 +667,7 @@ public class Btree {
       indexNodes = new ArrayList<Node>();
       indexNodes.add(indexNode);
       serializer.serializeNodes(indexNodes);
+      height++;
       // Set root
       setRoot(indexNode);
     }
@@ -273,32 +677,43 @@ public class Btree {
       // Create the layer directly above the leaf layer:
       indexNodes = getIndexLayer(leafNodes);
       serializer.serializeNodes(indexNodes);
+      height++;
       // Create all other index layers till root:
       while (indexNodes.size() > 1) {
         indexNodes = getIndexLayer(indexNodes);
         serializer.serializeNodes(indexNodes);
+        height++;
       }
     }
 
     // Set root
     setRoot(indexNodes.get(0));
     // Serialize header page:
-    serializer.serializeHeader(root.getAddress(), leafNodes.size(), order);
+    serializer.serializeHeader(
+        root.getAddress(),
+        leafNodes.size(),
+        order,
+        height,
+        dataEntries.isEmpty() ? 0 : dataEntries.firstKey(),
+        dataEntries.isEmpty() ? 0 : dataEntries.lastKey(),
+        root.getNumRecords());
     serializer.close();
   }
 
   /**
-   * Writes a string representation of the tree to the file indicated by the given file path
+   * Writes the serialized tree to the file indicated by the given file path. The index file is read
+   * back one page at a time by a {@link BTreeInspector}, so this also works after an off-heap
+   * build.
    *
-   * @param filePath the path to the desired output file
+   * @param filepath the path to the desired output file
    */
   public void dump(String filepath) {
-    try {
-      FileWriter myWriter = new FileWriter(filepath, true);
-      myWriter.write(root.toString());
-      myWriter.close();
+    BTreeInspector inspector = new BTreeInspector(index);
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(filepath, true))) {
+      inspector.inspect(writer);
     } catch (IOException e) {
       e.printStackTrace();
     }
+    inspector.close();
   }
 }
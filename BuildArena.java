@@ -0,0 +1,429 @@
+package btree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import util.Constants;
+
+/**
+ * BuildArena holds the (key, pageId, tupleId) data entries of an index build in direct buffers
+ * outside of the Java heap. Entries are sorted inside the arena; once the byte budget is used up,
+ * the sorted entries are spilled to a run file in the temp directory and the runs are merged when
+ * the entries are read back. I/O failures are thrown as UncheckedIOExceptions, so that the index
+ * build is aborted instead of writing an incomplete index.
+ */
+public class BuildArena {
+  /** The number of bytes taken by a single (key, pageId, tupleId) entry */
+  public static final int ENTRY_SIZE = 3 * Constants.IO.INT_SIZE;
+
+  /** The largest number of runs merged at once, which bounds the files open during a merge */
+  private static final int MAX_FAN_IN = 64;
+
+  private ByteBuffer entries;
+  private String tempDirectory;
+  private ArrayList<File> runs;
+  private File sortedFile;
+  private FileChannel sortedChannel;
+  private ByteBuffer readBuffer;
+  private Integer numEntries;
+  private Integer readEntries;
+
+  /**
+   * Constructs a BuildArena
+   *
+   * @param budget the maximum number of bytes of entries held in memory at once
+   * @param tempDirectory the directory where sorted runs are spilled
+   */
+  public BuildArena(long budget, String tempDirectory) {
+    long capacity = Math.min(budget, Integer.MAX_VALUE);
+    capacity = Math.max(capacity - capacity % ENTRY_SIZE, Constants.IO.PAGE_SIZE * ENTRY_SIZE);
+    this.entries = ByteBuffer.allocateDirect((int) capacity);
+    this.tempDirectory = tempDirectory;
+    this.runs = new ArrayList<File>();
+    this.numEntries = 0;
+  }
+
+  /**
+   * Adds an entry to the arena, spilling the arena to disk if it is full
+   *
+   * @param key the key of the entry
+   * @param pageId the page of the tuple the entry points to
+   * @param tupleId the position of the tuple on its page
+   */
+  public void add(int key, int pageId, int tupleId) {
+    if (entries.remaining() < ENTRY_SIZE) {
+      spill();
+    }
+    entries.putInt(key);
+    entries.putInt(pageId);
+    entries.putInt(tupleId);
+    numEntries++;
+  }
+
+  /**
+   * Returns the number of entries added to the arena
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return numEntries;
+  }
+
+  /** Sorts the entries in memory and writes them to a new run file */
+  private void spill() {
+    sort(0, entries.position() / ENTRY_SIZE - 1);
+    File run = createTempFile();
+    try (RandomAccessFile file = new RandomAccessFile(run, "rw")) {
+      entries.flip();
+      while (entries.hasRemaining()) {
+        file.getChannel().write(entries);
+      }
+    } catch (IOException e) {
+      run.delete();
+      throw new UncheckedIOException(e);
+    }
+    entries.clear();
+    runs.add(run);
+  }
+
+  /**
+   * Sorts all entries and prepares the arena for reading. Without spilled runs the entries are read
+   * back from memory; otherwise all runs are merged into a single sorted file.
+   */
+  public void finish() {
+    if (runs.isEmpty()) {
+      sort(0, entries.position() / ENTRY_SIZE - 1);
+      entries.flip();
+    } else {
+      if (entries.position() > 0) {
+        spill();
+      }
+      merge();
+    }
+    rewind();
+  }
+
+  /** Moves the read cursor back to the first entry, so the sorted entries can be read again */
+  public void rewind() {
+    readEntries = 0;
+    if (sortedFile == null) {
+      entries.rewind();
+      readBuffer = entries;
+    } else {
+      try {
+        sortedChannel.position(0);
+        readBuffer.clear();
+        readBuffer.flip();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Returns whether there is another entry to read
+   *
+   * @return true if there is another entry, false if all entries have been read
+   */
+  public boolean hasNext() {
+    return readEntries < numEntries;
+  }
+
+  /**
+   * Reads the next sorted entry into the given array
+   *
+   * @param entry the array receiving the key, pageId and tupleId of the entry
+   */
+  public void next(int[] entry) {
+    if (readBuffer.remaining() < ENTRY_SIZE) {
+      fill(sortedChannel, readBuffer);
+    }
+    entry[0] = readBuffer.getInt();
+    entry[1] = readBuffer.getInt();
+    entry[2] = readBuffer.getInt();
+    readEntries++;
+  }
+
+  /** Releases the memory of the arena and deletes its temporary files */
+  public void close() {
+    try {
+      if (sortedChannel != null) {
+        sortedChannel.close();
+        sortedChannel = null;
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    if (sortedFile != null) {
+      sortedFile.delete();
+      sortedFile = null;
+    }
+    // Runs are left behind only if the build failed before or during the merge
+    for (File run : runs) {
+      run.delete();
+    }
+    runs.clear();
+    entries = null;
+    readBuffer = null;
+  }
+
+  /**
+   * Merges all spilled runs into a single sorted file and deletes the runs. At most {@link
+   * #getMaxFanIn()} runs are merged at once; with more runs, the oldest ones are merged into a new
+   * run until few enough remain.
+   */
+  private void merge() {
+    int fanIn = getMaxFanIn();
+    while (runs.size() > fanIn) {
+      List<File> group = runs.subList(0, fanIn);
+      File merged = mergeRuns(new ArrayList<File>(group));
+      group.clear();
+      runs.add(merged);
+    }
+
+    sortedFile = runs.size() == 1 ? runs.get(0) : mergeRuns(runs);
+    runs.clear();
+    try {
+      sortedChannel = new RandomAccessFile(sortedFile, "r").getChannel();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    // The in-memory arena is reused as the read buffer of the merged file
+    readBuffer = entries;
+  }
+
+  /**
+   * Returns the number of runs merged at once. The memory of the arena is split between the read
+   * buffers of the runs and the output buffer, so each buffer holds at least a page of entries, and
+   * the merge stays within the budget.
+   *
+   * @return the fan-in of the merge, at least 2
+   */
+  private int getMaxFanIn() {
+    int buffers = entries.capacity() / (Constants.IO.PAGE_SIZE * ENTRY_SIZE);
+    return Math.max(2, Math.min(MAX_FAN_IN, buffers - 1));
+  }
+
+  /**
+   * Merges the given runs into a new run file. The runs are deleted whether or not the merge
+   * succeeds; the new file is deleted if it fails.
+   *
+   * @param group the runs to merge, at most {@link #getMaxFanIn()}
+   * @return the merged file
+   */
+  private File mergeRuns(List<File> group) {
+    int bufferSize = entries.capacity() / (group.size() + 1);
+    bufferSize -= bufferSize % ENTRY_SIZE;
+    ArrayList<RunReader> readers = new ArrayList<RunReader>();
+    PriorityQueue<RunReader> heads = new PriorityQueue<RunReader>();
+    File merged = createTempFile();
+
+    try (RandomAccessFile file = new RandomAccessFile(merged, "rw")) {
+      FileChannel channel = file.getChannel();
+      for (int i = 0; i < group.size(); i++) {
+        RunReader reader = new RunReader(group.get(i), entries.slice(i * bufferSize, bufferSize));
+        readers.add(reader);
+        if (reader.advance()) {
+          heads.add(reader);
+        }
+      }
+
+      ByteBuffer output = entries.slice(group.size() * bufferSize, bufferSize);
+      while (!heads.isEmpty()) {
+        RunReader reader = heads.poll();
+        if (output.remaining() < ENTRY_SIZE) {
+          drain(channel, output);
+        }
+        output.putInt(reader.entry[0]);
+        output.putInt(reader.entry[1]);
+        output.putInt(reader.entry[2]);
+        if (reader.advance()) {
+          heads.add(reader);
+        }
+      }
+      drain(channel, output);
+    } catch (IOException e) {
+      merged.delete();
+      throw new UncheckedIOException(e);
+    } finally {
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+      for (File run : group) {
+        run.delete();
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Writes the contents of the output buffer to the merged file
+   *
+   * @param channel the channel of the merged file
+   * @param output the buffer holding merged entries
+   */
+  private static void drain(FileChannel channel, ByteBuffer output) throws IOException {
+    output.flip();
+    while (output.hasRemaining()) {
+      channel.write(output);
+    }
+    output.clear();
+  }
+
+  /**
+   * Refills a read buffer from the given channel, keeping any partially read entry
+   *
+   * @param channel the channel to read from
+   * @param buffer the buffer to refill
+   */
+  private static void fill(FileChannel channel, ByteBuffer buffer) {
+    try {
+      buffer.compact();
+      while (buffer.hasRemaining() && channel.read(buffer) > 0) {}
+      buffer.flip();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Creates a new file for sorted entries in the temp directory
+   *
+   * @return the new file
+   */
+  private File createTempFile() {
+    try {
+      return File.createTempFile("btree-arena", ".run", new File(tempDirectory));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Compares the entries at the given positions by key, then by pageId and tupleId
+   *
+   * @param i the position of the first entry
+   * @param j the position of the second entry
+   * @return a negative value, zero or a positive value as the first entry is less than, equal to or
+   *     greater than the second
+   */
+  private int compare(int i, int j) {
+    int a = i * ENTRY_SIZE;
+    int b = j * ENTRY_SIZE;
+    for (int field = 0; field < 3; field++) {
+      int result =
+          Integer.compare(
+              entries.getInt(a + field * Constants.IO.INT_SIZE),
+              entries.getInt(b + field * Constants.IO.INT_SIZE));
+      if (result != 0) return result;
+    }
+    return 0;
+  }
+
+  /**
+   * Swaps the entries at the given positions
+   *
+   * @param i the position of the first entry
+   * @param j the position of the second entry
+   */
+  private void swap(int i, int j) {
+    int a = i * ENTRY_SIZE;
+    int b = j * ENTRY_SIZE;
+    for (int field = 0; field < 3; field++) {
+      int offset = field * Constants.IO.INT_SIZE;
+      int temp = entries.getInt(a + offset);
+      entries.putInt(a + offset, entries.getInt(b + offset));
+      entries.putInt(b + offset, temp);
+    }
+  }
+
+  /**
+   * Sorts the entries in positions [low, high] in place. Quicksort recurses into the smaller
+   * partition only, so the stack depth stays logarithmic.
+   *
+   * @param low the position of the first entry
+   * @param high the position of the last entry
+   */
+  private void sort(int low, int high) {
+    while (high - low > 16) {
+      int middle = (low + high) >>> 1;
+      if (compare(middle, low) < 0) swap(middle, low);
+      if (compare(high, low) < 0) swap(high, low);
+      if (compare(high, middle) < 0) swap(high, middle);
+      swap(middle, high - 1);
+      int pivot = high - 1;
+
+      int i = low;
+      int j = high - 1;
+      while (true) {
+        while (compare(++i, pivot) < 0) {}
+        while (compare(--j, pivot) > 0) {}
+        if (i >= j) break;
+        swap(i, j);
+      }
+      swap(i, high - 1);
+
+      if (i - low < high - i) {
+        sort(low, i - 1);
+        low = i + 1;
+      } else {
+        sort(i + 1, high);
+        high = i - 1;
+      }
+    }
+
+    // Insertion sort for short ranges
+    for (int i = low + 1; i <= high; i++) {
+      for (int j = i; j > low && compare(j, j - 1) < 0; j--) {
+        swap(j, j - 1);
+      }
+    }
+  }
+
+  /** RunReader reads the entries of a spilled run during the merge */
+  private static class RunReader implements Comparable<RunReader> {
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private int[] entry;
+
+    RunReader(File run, ByteBuffer buffer) throws IOException {
+      this.channel = new RandomAccessFile(run, "r").getChannel();
+      this.buffer = buffer;
+      this.buffer.flip();
+      this.entry = new int[3];
+    }
+
+    boolean advance() {
+      if (buffer.remaining() < ENTRY_SIZE) {
+        fill(channel, buffer);
+        if (buffer.remaining() < ENTRY_SIZE) return false;
+      }
+      entry[0] = buffer.getInt();
+      entry[1] = buffer.getInt();
+      entry[2] = buffer.getInt();
+      return true;
+    }
+
+    void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    public int compareTo(RunReader other) {
+      for (int field = 0; field < 3; field++) {
+        int result = Integer.compare(entry[field], other.entry[field]);
+        if (result != 0) return result;
+      }
+      return 0;
+    }
+  }
+}
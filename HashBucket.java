@@ -0,0 +1,82 @@
+package btree;
+
+import java.util.ArrayList;
+import util.Constants;
+
+/**
+ * Represents a bucket of an extendible hash index while the index is being built. A bucket holds
+ * the keys whose hash values agree on the lowest localDepth bits.
+ */
+public class HashBucket {
+  /** The number of bytes of a bucket page available for entries */
+  public static final int CAPACITY = Constants.IO.PAGE_SIZE - 3 * Constants.IO.INT_SIZE;
+
+  private Integer localDepth;
+  private ArrayList<Integer> keys;
+  private Integer numBytes;
+
+  /**
+   * Constructs an empty HashBucket
+   *
+   * @param localDepth The number of hash bits shared by all keys of the bucket.
+   */
+  public HashBucket(int localDepth) {
+    this.localDepth = localDepth;
+    this.keys = new ArrayList<Integer>();
+    this.numBytes = 0;
+  }
+
+  /**
+   * Gets the local depth of the bucket.
+   *
+   * @return The number of hash bits shared by all keys of the bucket.
+   */
+  public int getLocalDepth() {
+    return localDepth;
+  }
+
+  /**
+   * Sets the local depth of the bucket.
+   *
+   * @param localDepth The number of hash bits shared by all keys of the bucket.
+   */
+  public void setLocalDepth(int localDepth) {
+    this.localDepth = localDepth;
+  }
+
+  /**
+   * Gets the keys stored in the bucket, in ascending order.
+   *
+   * @return The list of keys in the bucket.
+   */
+  public ArrayList<Integer> getKeys() {
+    return keys;
+  }
+
+  /**
+   * Checks whether an entry of the given size fits in the primary page of the bucket.
+   *
+   * @param entrySize The number of bytes of the entry.
+   * @return True if the entry fits, false if it would need an overflow page.
+   */
+  public boolean fits(int entrySize) {
+    return numBytes + entrySize <= CAPACITY;
+  }
+
+  /**
+   * Adds a key to the bucket.
+   *
+   * @param key The key to add.
+   * @param entrySize The number of bytes of the key's entry.
+   */
+  public void add(int key, int entrySize) {
+    keys.add(key);
+    numBytes += entrySize;
+  }
+
+  /** Removes all keys from the bucket. */
+  public void clear() {
+    keys.clear();
+    numBytes = 0;
+  }
+}
@@ -0,0 +1,155 @@
+package btree;
+
+import common.Index;
+import common.Record;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import net.sf.jsqlparser.schema.Column;
+import util.Constants;
+
+/**
+ * HashIndex represents an extendible hash index, an alternative to the B+ tree for equality
+ * predicates. A directory of 2^globalDepth entries maps the lowest bits of a key's hash to the page
+ * of its bucket, so a probe reads a single bucket page once the directory is in memory.
+ */
+public class HashIndex {
+  /** The largest global depth the directory can grow to */
+  public static final int MAX_DEPTH = 24;
+
+  private Column column;
+  private Integer globalDepth;
+  private ArrayList<HashBucket> directory;
+  private TreeMap<Integer, ArrayList<Record>> dataEntries;
+  private String indexFilePath;
+  private HashIndexSerializer serializer;
+
+  /**
+   * Constructs a HashIndex object
+   *
+   * @param index the index object containing information about the index to build
+   */
+  public HashIndex(Index index) {
+    this.column = index.getIndexColumn();
+    this.globalDepth = 0;
+    this.directory = new ArrayList<HashBucket>();
+    this.directory.add(new HashBucket(0));
+    this.indexFilePath = index.getIndexFilePath();
+    this.serializer = null;
+  }
+
+  /**
+   * Returns the hash value of a key. The multiplication spreads consecutive keys over the low bits
+   * used to index the directory.
+   *
+   * @param key the key to hash
+   * @return the hash value of the key
+   */
+  public static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the number of bytes a key with the given number of records takes in a bucket page
+   *
+   * @param numRecords the number of records for the key
+   * @return the size of the entry in bytes
+   */
+  public static int getEntrySize(int numRecords) {
+    return (2 + 2 * numRecords) * Constants.IO.INT_SIZE;
+  }
+
+  /**
+   * Returns the bucket the given key belongs to
+   *
+   * @param key the key
+   * @return the bucket for the key
+   */
+  private HashBucket getBucket(int key) {
+    return directory.get(hash(key) & ((1 << globalDepth) - 1));
+  }
+
+  /**
+   * Inserts a key into its bucket, splitting full buckets until the key fits. Buckets that cannot
+   * be split, such as a bucket holding a single key with many records, keep the key in overflow
+   * pages instead.
+   *
+   * @param key the key to insert
+   * @param entrySize the number of bytes of the key's entry
+   */
+  private void insert(int key, int entrySize) {
+    while (true) {
+      HashBucket bucket = getBucket(key);
+      if (bucket.fits(entrySize)
+          || bucket.getKeys().isEmpty()
+          || bucket.getLocalDepth() == MAX_DEPTH) {
+        bucket.add(key, entrySize);
+        return;
+      }
+      split(bucket);
+    }
+  }
+
+  /**
+   * Splits a bucket in two on its next hash bit, doubling the directory if needed
+   *
+   * @param bucket the bucket to split
+   */
+  private void split(HashBucket bucket) {
+    if (bucket.getLocalDepth() == globalDepth) {
+      directory.addAll(new ArrayList<HashBucket>(directory));
+      globalDepth++;
+    }
+
+    int bit = bucket.getLocalDepth();
+    HashBucket newBucket = new HashBucket(bit + 1);
+    bucket.setLocalDepth(bit + 1);
+    for (int i = 0; i < directory.size(); i++) {
+      if (directory.get(i) == bucket && ((i >> bit) & 1) == 1) {
+        directory.set(i, newBucket);
+      }
+    }
+
+    ArrayList<Integer> keys = new ArrayList<Integer>(bucket.getKeys());
+    bucket.clear();
+    for (int key : keys) {
+      int entrySize = getEntrySize(dataEntries.get(key).size());
+      getBucket(key).add(key, entrySize);
+    }
+  }
+
+  /** Constructs and serializes the hash index */
+  public void constructAndSerialize() {
+    dataEntries = Btree.getDataEntries(column);
+    int numEntries = 0;
+    for (Map.Entry<Integer, ArrayList<Record>> entry : dataEntries.entrySet()) {
+      insert(entry.getKey(), getEntrySize(entry.getValue().size()));
+      numEntries += entry.getValue().size();
+    }
+
+    // Serialize every bucket once, in directory order
+    serializer = new HashIndexSerializer(indexFilePath);
+    try {
+      IdentityHashMap<HashBucket, Integer> bucketAddresses =
+          new IdentityHashMap<HashBucket, Integer>();
+      int[] directoryAddresses = new int[directory.size()];
+      for (int i = 0; i < directory.size(); i++) {
+        HashBucket bucket = directory.get(i);
+        if (!bucketAddresses.containsKey(bucket)) {
+          bucketAddresses.put(bucket, serializer.serializeBucket(bucket, dataEntries));
+        }
+        directoryAddresses[i] = bucketAddresses.get(bucket);
+      }
+
+      int directoryAddress = serializer.serializeDirectory(directoryAddresses);
+      serializer.serializeHeader(
+          globalDepth, directoryAddress, bucketAddresses.size(), dataEntries.size(), numEntries);
+      serializer.close();
+    } finally {
+      // A failed build deletes its temporary file; does nothing once the file is published
+      serializer.abort();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package btree;
+
+import common.Index;
+import common.Record;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import util.Constants;
+
+/**
+ * HashIndexDeserializer answers equality probes on a hash index. The directory is read once when
+ * the index is opened, so a probe reads only the pages of a single bucket, usually one page.
+ */
+public class HashIndexDeserializer {
+  private IndexFile file;
+  private ByteBuffer buffer;
+  private Integer globalDepth;
+  private Integer numKeys;
+  private Integer numEntries;
+  private int[] directory;
+  private ArrayList<Record> records;
+  private Integer nextRecordIndex;
+
+  /**
+   * Constructs a HashIndexDeserializer
+   *
+   * @param index the index object containing information about the index the hash index was
+   *     constructed on
+   */
+  public HashIndexDeserializer(Index index) {
+    initFileHandlers(index);
+    this.records = new ArrayList<Record>();
+    this.nextRecordIndex = 0;
+
+    deserializeHeader();
+  }
+
+  /**
+   * Acquires the latest version of the index file, which is read until the deserializer is closed
+   *
+   * @param index the index object containing information about the index to read
+   */
+  private void initFileHandlers(Index index) {
+    this.file = IndexFile.acquire(index.getIndexFilePath());
+    this.buffer = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+  }
+
+  /**
+   * Reads the page at the given address into the internal buffer
+   *
+   * @param address the address of the page
+   */
+  private void readPage(int address) {
+    buffer.clear();
+    file.read(buffer, (long) address * Constants.IO.PAGE_SIZE);
+    buffer.flip();
+  }
+
+  /** Deserializes the header page and the directory */
+  private void deserializeHeader() {
+    readPage(0);
+    globalDepth = buffer.getInt();
+    int directoryAddress = buffer.getInt();
+    buffer.getInt();
+    numKeys = buffer.getInt();
+    numEntries = buffer.getInt();
+
+    directory = new int[1 << globalDepth];
+    int address = directoryAddress;
+    for (int i = 0; i < directory.length; i++) {
+      if (i % HashIndexSerializer.DIRECTORY_ENTRIES_PER_PAGE == 0) {
+        readPage(address++);
+      }
+      directory[i] = buffer.getInt();
+    }
+  }
+
+  /**
+   * Returns the records of all tuples whose key is equal to the given key
+   *
+   * @param key the key to search for
+   * @return the list of matching records, empty if there is no match
+   */
+  public ArrayList<Record> findRecords(int key) {
+    ArrayList<Record> matches = new ArrayList<Record>();
+    int address = directory[HashIndex.hash(key) & (directory.length - 1)];
+
+    while (address != 0) {
+      readPage(address);
+      buffer.getInt(); // Local depth
+      int size = buffer.getInt();
+      address = buffer.getInt();
+
+      for (int i = 0; i < size; i++) {
+        int entryKey = buffer.getInt();
+        int count = buffer.getInt();
+        if (entryKey != key) {
+          buffer.position(buffer.position() + count * 2 * Constants.IO.INT_SIZE);
+          continue;
+        }
+        for (int j = 0; j < count; j++) {
+          matches.add(new Record(buffer.getInt(), buffer.getInt()));
+        }
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the record of the first tuple whose key is equal to the given key
+   *
+   * @param key the key to search for
+   * @return the first matching record, or null if there is none
+   */
+  public Record findFirstRecord(int key) {
+    records = findRecords(key);
+    nextRecordIndex = 0;
+    return getNextRecord();
+  }
+
+  /**
+   * Returns the next record for the key of the last call to findFirstRecord
+   *
+   * @return the next matching record, or null if there are no more
+   */
+  public Record getNextRecord() {
+    if (nextRecordIndex >= records.size()) return null;
+    return records.get(nextRecordIndex++);
+  }
+
+  /**
+   * Returns the number of distinct keys in the index
+   *
+   * @return the number of distinct keys
+   */
+  public Integer getNumKeys() {
+    return numKeys;
+  }
+
+  /**
+   * Returns the number of records in the index
+   *
+   * @return the number of records
+   */
+  public Integer getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Releases the index file and acquires its latest version, so a deserializer that was opened
+   * before a rebuild sees the new header and directory
+   *
+   * @param index the index object containing information about the index to read
+   */
+  public void reset(Index index) {
+    if (file != null) {
+      file.release();
+    }
+    initFileHandlers(index);
+    this.records = new ArrayList<Record>();
+    this.nextRecordIndex = 0;
+    deserializeHeader();
+  }
+
+  /** Clears the buffer and releases the index file */
+  public void close() {
+    buffer.clear();
+    if (file != null) {
+      file.release();
+      file = null;
+    }
+  }
+}
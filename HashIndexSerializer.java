@@ -0,0 +1,232 @@
+package btree;
+
+import common.Record;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import util.Constants;
+
+/**
+ * HashIndexSerializer contains methods to serialize a constructed hash index. The file starts with
+ * a header page, followed by the pages of every bucket and finally the directory pages.
+ */
+public class HashIndexSerializer {
+  /** The number of directory entries stored on a single directory page */
+  public static final int DIRECTORY_ENTRIES_PER_PAGE =
+      Constants.IO.PAGE_SIZE / Constants.IO.INT_SIZE;
+
+  private FileOutputStream fout;
+  private String indexFilePath;
+  private String tempFilePath;
+  private FileChannel fc;
+  private ByteBuffer buffer;
+  private Integer currentAddress;
+
+  /**
+   * Constructs a HashIndexSerializer
+   *
+   * @param indexFilePath the path to the output file for the serialized hash index
+   */
+  public HashIndexSerializer(String indexFilePath) {
+    initFileHandlers(indexFilePath);
+    initHeader();
+    this.currentAddress = 1;
+  }
+
+  private void initFileHandlers(String indexFilePath) {
+    try {
+      // The index is written to a temporary file and renamed into place once complete, so readers
+      // of the current index never see a partially written file
+      this.indexFilePath = indexFilePath;
+      this.tempFilePath = IndexFile.getTempFilePath(indexFilePath);
+      this.fout = new FileOutputStream(tempFilePath);
+      this.fc = fout.getChannel();
+      this.buffer = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /** Sets remaining values in the buffer to zero */
+  private void setZeros() {
+    while (buffer.hasRemaining()) {
+      buffer.putInt(0);
+    }
+  }
+
+  /** Writes the page in the buffer to the file */
+  private void writePage() {
+    try {
+      setZeros();
+      buffer.flip();
+      fc.write(buffer);
+      buffer.clear();
+      currentAddress++;
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /** Initializes the header with zero values */
+  private void initHeader() {
+    try {
+      setZeros();
+      buffer.flip();
+      fc.write(buffer);
+      buffer.clear();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Serializes the header of the hash index
+   *
+   * @param globalDepth the number of hash bits used to index the directory
+   * @param directoryAddress the address of the first directory page
+   * @param numBuckets the number of distinct buckets
+   * @param numKeys the number of distinct keys in the index
+   * @param numEntries the number of records in the index
+   */
+  public void serializeHeader(
+      int globalDepth, int directoryAddress, int numBuckets, int numKeys, int numEntries) {
+    try {
+      buffer.putInt(globalDepth);
+      buffer.putInt(directoryAddress);
+      buffer.putInt(numBuckets);
+      buffer.putInt(numKeys);
+      buffer.putInt(numEntries);
+      setZeros();
+
+      buffer.flip();
+      fc.position(0);
+      fc.write(buffer);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Starts a new bucket page in the buffer
+   *
+   * @param localDepth the local depth of the bucket
+   */
+  private void beginBucketPage(int localDepth) {
+    buffer.putInt(localDepth);
+    buffer.putInt(0); // Number of keys on the page, set once the page is complete
+    buffer.putInt(0); // Address of the overflow page, set if the bucket continues
+  }
+
+  /**
+   * Completes the bucket page in the buffer and writes it to the file
+   *
+   * @param numKeys the number of key entries on the page
+   * @param hasOverflow whether the bucket continues on the next page
+   */
+  private void endBucketPage(int numKeys, boolean hasOverflow) {
+    buffer.putInt(Constants.IO.INT_SIZE, numKeys);
+    buffer.putInt(2 * Constants.IO.INT_SIZE, hasOverflow ? currentAddress + 1 : 0);
+    writePage();
+  }
+
+  /**
+   * Serializes a bucket to one or more consecutive pages. Each key entry holds the key, the number
+   * of records and the records. The records of a key that does not fit on the current page continue
+   * in an entry for the same key on the overflow page.
+   *
+   * @param bucket the bucket to serialize
+   * @param dataEntries the map of key, record pairs of the index
+   * @return the address of the first page of the bucket
+   */
+  public int serializeBucket(HashBucket bucket, TreeMap<Integer, ArrayList<Record>> dataEntries) {
+    int bucketAddress = currentAddress;
+    int entryHeaderSize = HashIndex.getEntrySize(1);
+    int numKeys = 0;
+    beginBucketPage(bucket.getLocalDepth());
+
+    for (int key : bucket.getKeys()) {
+      ArrayList<Record> records = dataEntries.get(key);
+      int written = 0;
+      while (written < records.size()) {
+        if (buffer.remaining() < entryHeaderSize) {
+          endBucketPage(numKeys, true);
+          numKeys = 0;
+          beginBucketPage(bucket.getLocalDepth());
+        }
+
+        int fitting =
+            (buffer.remaining() - 2 * Constants.IO.INT_SIZE) / (2 * Constants.IO.INT_SIZE);
+        int count = Math.min(fitting, records.size() - written);
+        buffer.putInt(key);
+        buffer.putInt(count);
+        for (int i = written; i < written + count; i++) {
+          buffer.putInt(records.get(i).getPageId());
+          buffer.putInt(records.get(i).getTupleId());
+        }
+        written += count;
+        numKeys++;
+      }
+    }
+
+    endBucketPage(numKeys, false);
+    return bucketAddress;
+  }
+
+  /**
+   * Serializes the directory to consecutive pages
+   *
+   * @param bucketAddresses the address of the bucket of every directory entry
+   * @return the address of the first directory page
+   */
+  public int serializeDirectory(int[] bucketAddresses) {
+    int directoryAddress = currentAddress;
+    for (int i = 0; i < bucketAddresses.length; i++) {
+      buffer.putInt(bucketAddresses[i]);
+      if (!buffer.hasRemaining()) {
+        writePage();
+      }
+    }
+    if (buffer.position() > 0) {
+      writePage();
+    }
+    return directoryAddress;
+  }
+
+  /**
+   * Clears the buffer, forces the written file to disk, closes the file channel and file output
+   * stream, and atomically replaces the index file with the written file
+   */
+  public void close() {
+    if (fout == null) return;
+    try {
+      buffer.clear();
+      fc.force(true);
+      fc.close();
+      fout.close();
+      fout = null;
+    } catch (IOException e) {
+      e.printStackTrace();
+      abort();
+      return;
+    }
+    IndexFile.publish(tempFilePath, indexFilePath);
+  }
+
+  /**
+   * Closes the temporary file of a build that did not complete and deletes it, leaving the index
+   * file unchanged. Does nothing once the serializer has been closed.
+   */
+  public void abort() {
+    if (fout == null) return;
+    try {
+      fout.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    fout = null;
+    IndexFile.discard(tempFilePath);
+  }
+}
@@ -0,0 +1,185 @@
+package btree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * IndexFile is a reference-counted read handle on one version of an index file. Index files are
+ * never written in place: a build writes a temporary file next to the index, forces it to disk and
+ * atomically renames it over the index with {@link #publish}. Readers opened before the rename keep
+ * reading the version they acquired until they release it, and readers opened afterwards get the
+ * new version, so an index can be rebuilt while queries are using it.
+ *
+ * <p>All readers of a version share its channel, so pages must be read with positional reads.
+ */
+public class IndexFile {
+  /** The handle of the latest version of every index file that has open readers */
+  private static final HashMap<String, IndexFile> current = new HashMap<String, IndexFile>();
+
+  private String path;
+  private FileChannel fc;
+  private Integer references;
+
+  /**
+   * Opens a version of an index file
+   *
+   * @param path the normalized path of the index file
+   */
+  private IndexFile(String path) {
+    this.path = path;
+    this.references = 0;
+    try {
+      this.fc = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the key of an index file in the registry
+   *
+   * @param indexFilePath the path to the index file
+   * @return the absolute, normalized path
+   */
+  private static String normalize(String indexFilePath) {
+    return Paths.get(indexFilePath).toAbsolutePath().normalize().toString();
+  }
+
+  /**
+   * Acquires a handle on the latest version of an index file. Every call must be paired with a call
+   * to {@link #release()}.
+   *
+   * @param indexFilePath the path to the index file
+   * @return the handle of the latest version
+   */
+  public static synchronized IndexFile acquire(String indexFilePath) {
+    String path = normalize(indexFilePath);
+    IndexFile file = current.get(path);
+    if (file == null) {
+      file = new IndexFile(path);
+      current.put(path, file);
+    }
+    file.references++;
+    return file;
+  }
+
+  /**
+   * Releases the handle. The version is closed once its last reader has released it; a version that
+   * has been replaced is never handed out again.
+   */
+  public void release() {
+    synchronized (IndexFile.class) {
+      references--;
+      if (references > 0) return;
+
+      if (current.get(path) == this) {
+        current.remove(path);
+      }
+    }
+    try {
+      if (fc != null) {
+        fc.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the channel of this version of the index file
+   *
+   * @return the channel, shared by all readers of the version
+   */
+  public FileChannel getChannel() {
+    return fc;
+  }
+
+  /**
+   * Reads as much of the file as fits in the buffer, starting at the given position
+   *
+   * @param buffer the buffer to fill
+   * @param position the position in the file of the first byte to read
+   */
+  public void read(ByteBuffer buffer, long position) {
+    try {
+      long start = position - buffer.position();
+      while (buffer.hasRemaining() && fc.read(buffer, start + buffer.position()) > 0) {}
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the path of the temporary file a new version of the given index file is written to. It
+   * is in the same directory, so it can be renamed over the index file atomically.
+   *
+   * @param indexFilePath the path to the index file
+   * @return the path to the temporary file
+   */
+  public static String getTempFilePath(String indexFilePath) {
+    try {
+      Path indexPath = Paths.get(indexFilePath).toAbsolutePath();
+      return Files.createTempFile(
+              indexPath.getParent(), indexPath.getFileName().toString() + ".", ".tmp")
+          .toString();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return indexFilePath + ".tmp";
+  }
+
+  /**
+   * Makes a completely written temporary file the new version of an index file. The temporary file
+   * must have been forced to disk; the directory is forced after the rename so that the rename
+   * itself survives a crash. Readers holding the previous version keep it until they release it. If
+   * the rename fails, the temporary file is deleted and the previous version stays in place.
+   *
+   * @param tempFilePath the path to the temporary file
+   * @param indexFilePath the path to the index file
+   */
+  public static void publish(String tempFilePath, String indexFilePath) {
+    synchronized (IndexFile.class) {
+      Path indexPath = Paths.get(indexFilePath).toAbsolutePath();
+      try {
+        Files.move(
+            Paths.get(tempFilePath),
+            indexPath,
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        e.printStackTrace();
+        discard(tempFilePath);
+        return;
+      }
+      // The next reader opens the new version; readers of the old one still hold references to it
+      current.remove(normalize(indexFilePath));
+
+      try (FileChannel directory =
+          FileChannel.open(indexPath.getParent(), StandardOpenOption.READ)) {
+        directory.force(true);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Deletes the temporary file of a build that failed, leaving the index file unchanged
+   *
+   * @param tempFilePath the path to the temporary file
+   */
+  public static void discard(String tempFilePath) {
+    try {
+      Files.deleteIfExists(Paths.get(tempFilePath));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,318 @@
+package btree;
+
+import common.Tuple;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.SignedExpression;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.ComparisonOperator;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
+import net.sf.jsqlparser.schema.Column;
+
+/**
+ * IndexPredicate is the WHERE predicate of a partial index: a conjunction of comparisons between
+ * columns of the indexed table and constants, kept as one closed range of values per column. Only
+ * tuples that satisfy it get leaf entries, so the index can answer a query only if the query's
+ * condition implies the predicate.
+ */
+public class IndexPredicate {
+  private TreeMap<String, int[]> ranges;
+
+  /** Constructs an IndexPredicate that every tuple satisfies */
+  public IndexPredicate() {
+    this.ranges = new TreeMap<String, int[]>();
+  }
+
+  /**
+   * Constructs an IndexPredicate from a condition on the indexed table. The condition must be a
+   * conjunction of comparisons (=, <, <=, >, >=) between a column and an integer constant; every
+   * column is taken to be a column of the indexed table.
+   *
+   * @param condition the condition rows must satisfy to be indexed
+   * @return the predicate
+   * @throws IllegalArgumentException if the condition has any other form
+   */
+  public static IndexPredicate fromExpression(Expression condition) {
+    IndexPredicate predicate = new IndexPredicate();
+    if (!predicate.addConjuncts(condition, null)) {
+      throw new IllegalArgumentException("Unsupported partial index predicate: " + condition);
+    }
+    return predicate;
+  }
+
+  /**
+   * Restricts the given column to the closed range [low, high], intersecting it with the range
+   * already recorded for the column
+   *
+   * @param columnName the name of the column
+   * @param low the smallest accepted value
+   * @param high the largest accepted value
+   */
+  public void addRange(String columnName, int low, int high) {
+    int[] range = ranges.get(columnName);
+    if (range == null) {
+      ranges.put(columnName, new int[] {low, high});
+    } else {
+      range[0] = Math.max(range[0], low);
+      range[1] = Math.min(range[1], high);
+    }
+  }
+
+  /**
+   * Restricts the given column to a range whose bounds may lie outside of the integer range. A
+   * range that contains no integer is recorded as the empty range [MAX_VALUE, MIN_VALUE].
+   *
+   * @param columnName the name of the column
+   * @param low the smallest accepted value
+   * @param high the largest accepted value
+   */
+  private void addRange(String columnName, long low, long high) {
+    if (low > high || low > Integer.MAX_VALUE || high < Integer.MIN_VALUE) {
+      addRange(columnName, Integer.MAX_VALUE, Integer.MIN_VALUE);
+    } else {
+      addRange(
+          columnName,
+          (int) Math.max(low, Integer.MIN_VALUE),
+          (int) Math.min(high, Integer.MAX_VALUE));
+    }
+  }
+
+  /**
+   * Adds the ranges of every supported conjunct of the condition
+   *
+   * @param condition the condition
+   * @param tableReference the name or alias of the indexed table in the condition; conjuncts on
+   *     columns qualified with any other table, or not qualified at all, are not supported. If
+   *     null, every column is taken to be a column of the indexed table.
+   * @return true if every conjunct was supported
+   */
+  private boolean addConjuncts(Expression condition, String tableReference) {
+    if (condition instanceof Parenthesis) {
+      return addConjuncts(((Parenthesis) condition).getExpression(), tableReference);
+    }
+    if (condition instanceof AndExpression) {
+      AndExpression and = (AndExpression) condition;
+      boolean left = addConjuncts(and.getLeftExpression(), tableReference);
+      boolean right = addConjuncts(and.getRightExpression(), tableReference);
+      return left && right;
+    }
+    if (!(condition instanceof ComparisonOperator)) return false;
+
+    ComparisonOperator comparison = (ComparisonOperator) condition;
+    Expression left = comparison.getLeftExpression();
+    Expression right = comparison.getRightExpression();
+    Long constant;
+    Column column;
+    boolean columnOnLeft;
+    if (left instanceof Column && (constant = getConstant(right)) != null) {
+      column = (Column) left;
+      columnOnLeft = true;
+    } else if (right instanceof Column && (constant = getConstant(left)) != null) {
+      column = (Column) right;
+      columnOnLeft = false;
+    } else {
+      return false;
+    }
+    if (tableReference != null
+        && (column.getTable() == null || !tableReference.equals(column.getTable().getName()))) {
+      return false;
+    }
+
+    // Bounds are computed on longs, so constants outside of the integer range and strict bounds at
+    // its ends give an empty range instead of being clamped to a value the column can hold. Values
+    // just beyond the integer range behave like any larger ones, and cannot overflow a long.
+    long value = Math.max(Integer.MIN_VALUE - 2L, Math.min(Integer.MAX_VALUE + 2L, constant));
+    String columnName = column.getColumnName();
+    if (comparison instanceof EqualsTo) {
+      addRange(columnName, value, value);
+    } else if (comparison instanceof GreaterThan || comparison instanceof GreaterThanEquals) {
+      // column > c, or c > column with the constant on the left
+      long bound =
+          comparison instanceof GreaterThan ? (columnOnLeft ? value + 1 : value - 1) : value;
+      if (columnOnLeft) {
+        addRange(columnName, bound, Long.MAX_VALUE);
+      } else {
+        addRange(columnName, Long.MIN_VALUE, bound);
+      }
+    } else if (comparison instanceof MinorThan || comparison instanceof MinorThanEquals) {
+      long bound = comparison instanceof MinorThan ? (columnOnLeft ? value - 1 : value + 1) : value;
+      if (columnOnLeft) {
+        addRange(columnName, Long.MIN_VALUE, bound);
+      } else {
+        addRange(columnName, bound, Long.MAX_VALUE);
+      }
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the value of an integer constant
+   *
+   * @param expression the expression
+   * @return the value, or null if the expression is not an integer constant
+   */
+  private static Long getConstant(Expression expression) {
+    if (expression instanceof LongValue) {
+      return ((LongValue) expression).getValue();
+    }
+    if (expression instanceof SignedExpression) {
+      SignedExpression signed = (SignedExpression) expression;
+      Long value = getConstant(signed.getExpression());
+      if (value == null) return null;
+      return signed.getSign() == '-' ? -value : value;
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether every tuple satisfying the query condition satisfies this predicate. Only
+   * comparisons between a column of the indexed table, qualified with the given name or alias, and
+   * a constant are used; all other conjuncts are ignored, which only makes the answer more
+   * conservative.
+   *
+   * @param queryCondition the condition of the query, or null for none
+   * @param tableReference the name or alias of the indexed table in the query, or null if the
+   *     condition only refers to the indexed table
+   * @return true if a partial index with this predicate can answer the query
+   */
+  public boolean isImpliedBy(Expression queryCondition, String tableReference) {
+    IndexPredicate query = new IndexPredicate();
+    if (queryCondition != null) {
+      query.addConjuncts(queryCondition, tableReference);
+    }
+    return isImpliedBy(query);
+  }
+
+  /**
+   * Returns whether every tuple satisfying the other predicate, on the same table, satisfies this
+   * predicate
+   *
+   * @param other the other predicate
+   * @return true if every range of this predicate contains the other's range on the same column
+   */
+  public boolean isImpliedBy(IndexPredicate other) {
+    // A predicate with an empty range matches no tuple, so it implies anything
+    for (int[] otherRange : other.ranges.values()) {
+      if (otherRange[0] > otherRange[1]) return true;
+    }
+
+    for (Map.Entry<String, int[]> entry : ranges.entrySet()) {
+      int[] range = entry.getValue();
+      int[] otherRange = other.ranges.get(entry.getKey());
+      if (otherRange == null) {
+        // An unconstrained column only implies a range that accepts every value
+        if (range[0] != Integer.MIN_VALUE || range[1] != Integer.MAX_VALUE) return false;
+        continue;
+      }
+      if (otherRange[0] < range[0] || otherRange[1] > range[1]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the position of every restricted column in the schema of the indexed table, in the
+   * order of {@link #getColumnNames()}
+   *
+   * @param schema the columns of the indexed table
+   * @return the column positions
+   * @throws IllegalArgumentException if a restricted column is not in the schema
+   */
+  public int[] getColumnNumbers(ArrayList<Column> schema) {
+    int[] columnNumbers = new int[ranges.size()];
+    int i = 0;
+    for (String columnName : ranges.keySet()) {
+      columnNumbers[i] = -1;
+      for (int j = 0; j < schema.size(); j++) {
+        if (schema.get(j).getColumnName().equals(columnName)) {
+          columnNumbers[i] = j;
+          break;
+        }
+      }
+      if (columnNumbers[i] < 0) {
+        throw new IllegalArgumentException(
+            "Unknown column in partial index predicate: " + columnName);
+      }
+      i++;
+    }
+    return columnNumbers;
+  }
+
+  /**
+   * Returns whether a tuple of the indexed table satisfies the predicate
+   *
+   * @param tuple the tuple
+   * @param columnNumbers the positions returned by {@link #getColumnNumbers(ArrayList)}
+   * @return true if the tuple should be indexed
+   */
+  public boolean matches(Tuple tuple, int[] columnNumbers) {
+    int i = 0;
+    for (int[] range : ranges.values()) {
+      int value = tuple.getElementAtIndex(columnNumbers[i++]);
+      if (value < range[0] || value > range[1]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the names of the restricted columns, in ascending order
+   *
+   * @return the list of column names
+   */
+  public ArrayList<String> getColumnNames() {
+    return new ArrayList<String>(ranges.keySet());
+  }
+
+  /**
+   * Returns the smallest value accepted for the given column
+   *
+   * @param columnName the name of a restricted column
+   * @return the lower end of its range
+   */
+  public int getLow(String columnName) {
+    return ranges.get(columnName)[0];
+  }
+
+  /**
+   * Returns the largest value accepted for the given column
+   *
+   * @param columnName the name of a restricted column
+   * @return the upper end of its range
+   */
+  public int getHigh(String columnName) {
+    return ranges.get(columnName)[1];
+  }
+
+  /**
+   * Returns the number of restricted columns
+   *
+   * @return the number of column ranges
+   */
+  public int size() {
+    return ranges.size();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, int[]> entry : ranges.entrySet()) {
+      if (sb.length() > 0) sb.append(" AND ");
+      sb.append(entry.getKey())
+          .append(" in [")
+          .append(entry.getValue()[0])
+          .append(", ")
+          .append(entry.getValue()[1])
+          .append("]");
+    }
+    return sb.length() == 0 ? "true" : sb.toString();
+  }
+}
@@ -0,0 +1,164 @@
+package btree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import util.Constants;
+
+/**
+ * InnerLevels holds every index node of a serialized tree, decoded into flat primitive arrays. The
+ * index nodes are stored after the leaves, from address numLeaves + 1 up to the root, so node i of
+ * the arrays is the index node at address numLeaves + 1 + i. A descent over these arrays reads no
+ * pages at all; only the leaf it ends in has to be read from the file.
+ *
+ * <p>The keys of every node are laid out in blocks of {@link NodeSearch#BLOCK_SIZE} keys padded
+ * with {@link Integer#MAX_VALUE}, and above them a block of fence keys holds the last key of every
+ * key block. A node search first counts the fences not greater than the probe key, which is the
+ * number of key blocks to skip, and then searches a single key block, so even a node with hundreds
+ * of keys is searched with a few vector comparisons on adjacent cache lines.
+ */
+public class InnerLevels {
+  private Integer numLeaves;
+  private Integer rootAddress;
+  private NodeSearch search;
+  private int[] sizes;
+  private int[] keyStart;
+  private int[] fenceStart;
+  private int[] childStart;
+  private int[] keys;
+  private int[] fences;
+  private int[] children;
+  private int[] recordsBefore;
+
+  /**
+   * Reads and decodes all index nodes of a tree
+   *
+   * @param fc the channel of the index file
+   * @param rootAddress the address of the root node
+   * @param numLeaves the number of leaves in the tree
+   */
+  public InnerLevels(FileChannel fc, int rootAddress, int numLeaves) {
+    this.numLeaves = numLeaves;
+    this.rootAddress = rootAddress;
+    this.search = NodeSearch.getInstance();
+
+    int numNodes = rootAddress - numLeaves;
+    ByteBuffer[] pages = new ByteBuffer[numNodes];
+    this.sizes = new int[numNodes];
+    this.keyStart = new int[numNodes + 1];
+    this.fenceStart = new int[numNodes + 1];
+    this.childStart = new int[numNodes + 1];
+    try {
+      for (int i = 0; i < numNodes; i++) {
+        pages[i] = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+        long position = (long) (numLeaves + 1 + i) * Constants.IO.PAGE_SIZE;
+        while (pages[i].hasRemaining() && fc.read(pages[i], position + pages[i].position()) > 0) {}
+        pages[i].flip();
+
+        sizes[i] = pages[i].getInt(Constants.IO.INT_SIZE);
+        int numKeyBlocks = NodeSearch.getNumBlocks(sizes[i]);
+        keyStart[i + 1] = keyStart[i] + numKeyBlocks * NodeSearch.BLOCK_SIZE;
+        fenceStart[i + 1] =
+            fenceStart[i] + NodeSearch.getNumBlocks(numKeyBlocks) * NodeSearch.BLOCK_SIZE;
+        childStart[i + 1] = childStart[i] + sizes[i] + 1;
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    this.keys = new int[keyStart[numNodes]];
+    this.fences = new int[fenceStart[numNodes]];
+    this.children = new int[childStart[numNodes]];
+    this.recordsBefore = new int[childStart[numNodes]];
+    Arrays.fill(keys, Integer.MAX_VALUE);
+    Arrays.fill(fences, Integer.MAX_VALUE);
+    for (int i = 0; i < numNodes; i++) {
+      ByteBuffer page = pages[i];
+      page.getInt(); // Index node flag
+      page.getInt(); // Number of keys
+      for (int k = 0; k < sizes[i]; k++) {
+        keys[keyStart[i] + k] = page.getInt();
+      }
+      for (int b = 0; b < NodeSearch.getNumBlocks(sizes[i]); b++) {
+        fences[fenceStart[i] + b] = keys[keyStart[i] + (b + 1) * NodeSearch.BLOCK_SIZE - 1];
+      }
+      for (int c = 0; c <= sizes[i]; c++) {
+        children[childStart[i] + c] = page.getInt();
+      }
+      // The record counts of the children are kept as prefix sums
+      int numRecords = 0;
+      for (int c = 0; c <= sizes[i]; c++) {
+        recordsBefore[childStart[i] + c] = numRecords;
+        numRecords += page.getInt();
+      }
+    }
+  }
+
+  /**
+   * Descends from the root to the leaf whose key range contains the given key. At every node the
+   * child taken is the one after the last separator less than or equal to the key.
+   *
+   * @param key the key to search for
+   * @return the address of the leaf
+   */
+  public int findLeaf(int key) {
+    int address = rootAddress;
+    while (address > numLeaves) {
+      int node = address - numLeaves - 1;
+      address = children[childStart[node] + countKeysAtMost(node, key)];
+    }
+    return address;
+  }
+
+  /**
+   * Returns the number of records stored in the leaves to the left of the leaf that {@link
+   * #findLeaf(int)} reaches for the given key
+   *
+   * @param key the key to search for
+   * @return the number of records in all preceding leaves
+   */
+  public int countRecordsBefore(int key) {
+    int numRecords = 0;
+    int address = rootAddress;
+    while (address > numLeaves) {
+      int node = address - numLeaves - 1;
+      int child = childStart[node] + countKeysAtMost(node, key);
+      numRecords += recordsBefore[child];
+      address = children[child];
+    }
+    return numRecords;
+  }
+
+  /**
+   * Returns the number of keys of the given node that are less than or equal to the given key
+   *
+   * @param node the position of the node in the arrays
+   * @param key the key to search for
+   * @return the number of keys less than or equal to key
+   */
+  private int countKeysAtMost(int node, int key) {
+    int size = sizes[node];
+    // The padding equals Integer.MAX_VALUE, so it would be counted for this key
+    if (size == 0 || key == Integer.MAX_VALUE) return size;
+
+    int numKeyBlocks = NodeSearch.getNumBlocks(size);
+    int skippedBlocks = 0;
+    if (numKeyBlocks > 1) {
+      int numFenceBlocks = NodeSearch.getNumBlocks(numKeyBlocks);
+      skippedBlocks = search.countKeysAtMost(fences, fenceStart[node], numFenceBlocks, key);
+      if (skippedBlocks == numKeyBlocks) return size;
+    }
+    int blockStart = keyStart[node] + skippedBlocks * NodeSearch.BLOCK_SIZE;
+    return skippedBlocks * NodeSearch.BLOCK_SIZE + search.countKeysAtMost(keys, blockStart, 1, key);
+  }
+
+  /**
+   * Returns the number of index nodes held in memory
+   *
+   * @return the number of index nodes
+   */
+  public int getNumNodes() {
+    return sizes.length;
+  }
+}
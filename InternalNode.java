@@ -9,6 +9,7 @@ import java.util.ArrayList;
 public class InternalNode extends Node {
   private ArrayList<Integer> keys;
   private ArrayList<Node> children;
+  private Integer numRecords;
 
   /**
    * Constructs an InternalNode object with the specified address, keys, and child nodes.
@@ -21,6 +22,10 @@ public class InternalNode extends Node {
     super(address, false);
     this.keys = keys;
     this.children = children;
+    this.numRecords = 0;
+    for (Node child : children) {
+      this.numRecords += child.getNumRecords();
+    }
   }
 
   /**
@@ -41,6 +46,15 @@ public class InternalNode extends Node {
     return children.get(0).getSmallestKey();
   }
 
+  /**
+   * Gets the number of records stored in the leaves below this internal node.
+   *
+   * @return The number of records in this node's subtree.
+   */
+  public int getNumRecords() {
+    return numRecords;
+  }
+
   /**
    * Retrieves the list of keys stored in this internal node.
    *
@@ -12,6 +12,8 @@ import java.util.TreeMap;
  */
 public class LeafNode extends Node {
   private TreeMap<Integer, ArrayList<Record>> dataEntries;
+  private Integer previousAddress;
+  private Integer nextAddress;
 
   /**
    * Constructs a LeafNode with the specified address and leaf entries.
@@ -22,6 +24,38 @@ public class LeafNode extends Node {
   public LeafNode(int address, TreeMap<Integer, ArrayList<Record>> leafEntries) {
     super(address, true);
     this.dataEntries = leafEntries;
+    this.previousAddress = 0;
+    this.nextAddress = 0;
+  }
+
+  /**
+   * Links the leaf node to its neighbours in the leaf layer. An address of 0 means there is no
+   * neighbour on that side, since address 0 is always the header page.
+   *
+   * @param previousAddress The address of the previous leaf node.
+   * @param nextAddress The address of the next leaf node.
+   */
+  public void setSiblings(int previousAddress, int nextAddress) {
+    this.previousAddress = previousAddress;
+    this.nextAddress = nextAddress;
+  }
+
+  /**
+   * Gets the address of the previous leaf node.
+   *
+   * @return The address of the previous leaf node, or 0 if this is the first leaf.
+   */
+  public int getPreviousAddress() {
+    return previousAddress;
+  }
+
+  /**
+   * Gets the address of the next leaf node.
+   *
+   * @return The address of the next leaf node, or 0 if this is the last leaf.
+   */
+  public int getNextAddress() {
+    return nextAddress;
   }
 
   /**
@@ -42,6 +76,19 @@ public class LeafNode extends Node {
     return dataEntries.firstKey();
   }
 
+  /**
+   * Gets the number of records stored in the leaf node, over all of its keys.
+   *
+   * @return The number of records in the leaf node.
+   */
+  public int getNumRecords() {
+    int numRecords = 0;
+    for (ArrayList<Record> records : dataEntries.values()) {
+      numRecords += records.size();
+    }
+    return numRecords;
+  }
+
   /**
    * Gets a list of keys stored in the leaf node.
    *
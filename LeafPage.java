@@ -0,0 +1,136 @@
+package btree;
+
+import common.Record;
+import java.nio.ByteBuffer;
+import util.Constants;
+
+/**
+ * LeafPage is a decoded view of a serialized leaf node. It keeps the keys and records of the leaf
+ * in flat arrays so a cursor can move through the leaf in either direction.
+ */
+public class LeafPage {
+  /** Byte offset of the address of the previous leaf, stored at the end of every leaf page. */
+  public static final int PREVIOUS_OFFSET = Constants.IO.PAGE_SIZE - 2 * Constants.IO.INT_SIZE;
+
+  /** Byte offset of the address of the next leaf, stored at the end of every leaf page. */
+  public static final int NEXT_OFFSET = Constants.IO.PAGE_SIZE - Constants.IO.INT_SIZE;
+
+  private int address;
+  private int previousAddress;
+  private int nextAddress;
+  private int[] keys;
+  private int[] recordStart;
+  private int[] pageIds;
+  private int[] tupleIds;
+
+  /**
+   * Decodes the leaf page held in the given buffer
+   *
+   * @param address the address of the leaf page
+   * @param buffer the buffer holding the page, positioned at its start
+   */
+  public LeafPage(int address, ByteBuffer buffer) {
+    this.address = address;
+    this.previousAddress = buffer.getInt(PREVIOUS_OFFSET);
+    this.nextAddress = buffer.getInt(NEXT_OFFSET);
+
+    buffer.getInt(); // Leaf flag
+    int size = buffer.getInt();
+    this.keys = new int[size];
+    this.recordStart = new int[size + 1];
+
+    // The records are counted first so the record arrays can be sized exactly
+    int start = buffer.position();
+    int numRecords = 0;
+    for (int i = 0; i < size; i++) {
+      buffer.getInt();
+      int count = buffer.getInt();
+      buffer.position(buffer.position() + count * 2 * Constants.IO.INT_SIZE);
+      numRecords += count;
+    }
+    buffer.position(start);
+
+    this.pageIds = new int[numRecords];
+    this.tupleIds = new int[numRecords];
+    int record = 0;
+    for (int i = 0; i < size; i++) {
+      keys[i] = buffer.getInt();
+      int count = buffer.getInt();
+      recordStart[i] = record;
+      for (int j = 0; j < count; j++) {
+        pageIds[record] = buffer.getInt();
+        tupleIds[record] = buffer.getInt();
+        record++;
+      }
+    }
+    recordStart[size] = record;
+  }
+
+  /**
+   * Returns the address of the leaf page
+   *
+   * @return the address of the leaf page
+   */
+  public int getAddress() {
+    return address;
+  }
+
+  /**
+   * Returns the address of the previous leaf, or 0 if this is the first leaf
+   *
+   * @return the address of the previous leaf
+   */
+  public int getPreviousAddress() {
+    return previousAddress;
+  }
+
+  /**
+   * Returns the address of the next leaf, or 0 if this is the last leaf
+   *
+   * @return the address of the next leaf
+   */
+  public int getNextAddress() {
+    return nextAddress;
+  }
+
+  /**
+   * Returns the number of keys in the leaf
+   *
+   * @return the number of keys in the leaf
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * Returns the key with the given position in the leaf
+   *
+   * @param keyIndex the position of the key in the leaf
+   * @return the key
+   */
+  public int getKey(int keyIndex) {
+    return keys[keyIndex];
+  }
+
+  /**
+   * Returns the number of records stored for the key with the given position in the leaf
+   *
+   * @param keyIndex the position of the key in the leaf
+   * @return the number of records for the key
+   */
+  public int getNumRecords(int keyIndex) {
+    return recordStart[keyIndex + 1] - recordStart[keyIndex];
+  }
+
+  /**
+   * Returns the record with the given position among the records of the given key
+   *
+   * @param keyIndex the position of the key in the leaf
+   * @param recordIndex the position of the record among the records of the key
+   * @return the record
+   */
+  public Record getRecord(int keyIndex, int recordIndex) {
+    int record = recordStart[keyIndex] + recordIndex;
+    return new Record(pageIds[record], tupleIds[record]);
+  }
+}
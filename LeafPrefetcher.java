@@ -0,0 +1,158 @@
+package btree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import util.Constants;
+
+/**
+ * LeafPrefetcher reads leaf pages ahead of a range scan on a background I/O executor. Leaves are
+ * serialized contiguously from address 1, so the pages that follow the current leaf are the next
+ * leaves of the scan. Pages that are not used, for example because the scan stops early, are
+ * cancelled and dropped.
+ *
+ * <p>For unclustered indexes the prefetcher can also read the data pages referenced by the records
+ * of every prefetched leaf, so they are in the OS page cache once the scan resolves them.
+ */
+public class LeafPrefetcher {
+  /** The number of leaves read ahead of the cursor by default */
+  public static final int DEFAULT_WINDOW = 8;
+
+  /** The number of consecutive leaves a scan must cross before pages are read ahead */
+  public static final int TRIGGER_LEAVES = 3;
+
+  private static final int NUM_THREADS = 4;
+  private static final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          NUM_THREADS,
+          runnable -> {
+            Thread thread = new Thread(runnable, "btree-prefetch");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private FileChannel indexChannel;
+  private FileChannel dataChannel;
+  private Integer window;
+  private Integer lastLeafAddress;
+  private Integer prefetchedUpTo;
+  private HashMap<Integer, Future<ByteBuffer>> pages;
+  private AtomicInteger generation;
+
+  /**
+   * Constructs a LeafPrefetcher
+   *
+   * @param indexChannel the channel of the index file
+   * @param dataChannel the channel of the relation file whose pages should be read along with the
+   *     leaves, or null to only read leaves
+   * @param window the number of leaves to keep in flight ahead of the cursor
+   * @param lastLeafAddress the address of the last leaf of the index
+   */
+  public LeafPrefetcher(
+      FileChannel indexChannel, FileChannel dataChannel, int window, int lastLeafAddress) {
+    this.indexChannel = indexChannel;
+    this.dataChannel = dataChannel;
+    this.window = window;
+    this.lastLeafAddress = lastLeafAddress;
+    this.prefetchedUpTo = 0;
+    this.pages = new HashMap<Integer, Future<ByteBuffer>>();
+    this.generation = new AtomicInteger();
+  }
+
+  /**
+   * Makes sure the window of leaves following the given leaf is being read
+   *
+   * @param address the address of the leaf the cursor has just moved to
+   */
+  public void advance(int address) {
+    int from = Math.max(address + 1, prefetchedUpTo + 1);
+    int to = Math.min(address + window, lastLeafAddress);
+    for (int leafAddress = from; leafAddress <= to; leafAddress++) {
+      final int pageAddress = leafAddress;
+      final int readGeneration = generation.get();
+      pages.put(pageAddress, executor.submit(() -> readLeaf(pageAddress, readGeneration)));
+    }
+    prefetchedUpTo = Math.max(prefetchedUpTo, to);
+  }
+
+  /**
+   * Returns the prefetched page at the given address, waiting for its read to finish
+   *
+   * @param address the address of the page
+   * @return the page, or null if it was not prefetched
+   */
+  public ByteBuffer take(int address) {
+    Future<ByteBuffer> page = pages.remove(address);
+    if (page == null) return null;
+
+    try {
+      return page.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | CancellationException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   * Cancels all outstanding reads and forgets the pages read so far. Running reads are not
+   * interrupted, since interrupting a thread blocked on a FileChannel closes the channel.
+   */
+  public void cancel() {
+    generation.incrementAndGet();
+    for (Future<ByteBuffer> page : pages.values()) {
+      page.cancel(false);
+    }
+    pages.clear();
+    prefetchedUpTo = 0;
+  }
+
+  /**
+   * Reads the leaf page at the given address and, if enabled, the data pages it references
+   *
+   * @param address the address of the leaf page
+   * @param readGeneration the value of the cancellation counter when the read was submitted
+   * @return the leaf page, flipped for reading
+   */
+  private ByteBuffer readLeaf(int address, int readGeneration) throws IOException {
+    ByteBuffer page = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+    long position = (long) address * Constants.IO.PAGE_SIZE;
+    while (page.hasRemaining() && indexChannel.read(page, position + page.position()) > 0) {}
+    page.flip();
+
+    if (dataChannel != null && page.getInt(0) == 0) {
+      readDataPages(new LeafPage(address, page.duplicate()), readGeneration);
+    }
+    return page;
+  }
+
+  /**
+   * Reads every distinct data page referenced by the records of the given leaf
+   *
+   * @param leaf the decoded leaf page
+   * @param readGeneration the value of the cancellation counter when the read was submitted
+   */
+  private void readDataPages(LeafPage leaf, int readGeneration) throws IOException {
+    HashSet<Integer> pageIds = new HashSet<Integer>();
+    ByteBuffer page = ByteBuffer.allocate(Constants.IO.PAGE_SIZE);
+    for (int i = 0; i < leaf.size(); i++) {
+      for (int j = 0; j < leaf.getNumRecords(i); j++) {
+        int pageId = leaf.getRecord(i, j).getPageId();
+        if (generation.get() != readGeneration) return;
+        if (pageIds.add(pageId)) {
+          page.clear();
+          dataChannel.read(page, (long) pageId * Constants.IO.PAGE_SIZE);
+        }
+      }
+    }
+  }
+}
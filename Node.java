@@ -57,6 +57,13 @@ public abstract class Node {
    */
   public abstract int getSmallestKey();
 
+  /**
+   * Abstract method to get the number of records stored in the subtree rooted at the node.
+   *
+   * @return The number of (pageId, tupleId) records in the node's subtree.
+   */
+  public abstract int getNumRecords();
+
   /**
    * Abstract method to get the list of keys stored in the node.
    *
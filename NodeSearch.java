@@ -0,0 +1,59 @@
+package btree;
+
+/**
+ * NodeSearch counts the keys of a sorted, decoded key block that are less than or equal to a probe
+ * key, which is the position of the child to descend to. Keys are laid out in blocks of {@link
+ * #BLOCK_SIZE} keys padded with {@link Integer#MAX_VALUE}, so a kernel never needs a partial block.
+ *
+ * <p>{@link #getInstance()} returns the Vector API kernel when the {@code jdk.incubator.vector}
+ * module is available (the JVM has to be started with {@code --add-modules jdk.incubator.vector}),
+ * and the scalar kernel otherwise.
+ */
+public abstract class NodeSearch {
+  /** The number of keys in a block; a multiple of every vector species length */
+  public static final int BLOCK_SIZE = 16;
+
+  private static NodeSearch instance;
+
+  /**
+   * Returns the fastest node search kernel available in this JVM
+   *
+   * @return the node search kernel
+   */
+  public static synchronized NodeSearch getInstance() {
+    if (instance == null) {
+      try {
+        // Loaded by name so the class is never linked when the incubator module is missing
+        instance =
+            (NodeSearch)
+                Class.forName("btree.VectorNodeSearch").getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        instance = new ScalarNodeSearch();
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the number of keys in keys[from, from + numBlocks * BLOCK_SIZE) that are less than or
+   * equal to the given key. The keys are sorted, so the count is the position of the first larger
+   * key.
+   *
+   * @param keys the array of padded key blocks
+   * @param from the position of the first key
+   * @param numBlocks the number of blocks to search
+   * @param key the probe key, less than {@link Integer#MAX_VALUE}
+   * @return the number of keys less than or equal to key
+   */
+  public abstract int countKeysAtMost(int[] keys, int from, int numBlocks, int key);
+
+  /**
+   * Returns the number of blocks needed for the given number of keys
+   *
+   * @param numKeys the number of keys
+   * @return the number of padded blocks
+   */
+  public static int getNumBlocks(int numKeys) {
+    return (numKeys + BLOCK_SIZE - 1) / BLOCK_SIZE;
+  }
+}
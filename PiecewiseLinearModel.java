@@ -0,0 +1,206 @@
+package btree;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import util.Constants;
+
+/**
+ * PiecewiseLinearModel maps a key to the address of the leaf that may contain it. The leaves are
+ * stored contiguously from address 1 in key order, so leaf address is a monotone function of the
+ * first key of the leaf; the model approximates it with linear segments such that the predicted
+ * address of every leaf's first key is within the error bound of its real address.
+ *
+ * <p>Every segment is stored as its first key, the address of its first leaf and its slope (16
+ * bytes), so the model of a large index fits on a few pages.
+ */
+public class PiecewiseLinearModel {
+  /** The number of bytes of a serialized segment */
+  public static final int SEGMENT_SIZE = 4 * Constants.IO.INT_SIZE;
+
+  /** The number of segments stored on a single model page */
+  public static final int SEGMENTS_PER_PAGE = Constants.IO.PAGE_SIZE / SEGMENT_SIZE;
+
+  private Integer numLeaves;
+  private Integer errorBound;
+  private int[] firstKeys;
+  private int[] firstAddresses;
+  private double[] slopes;
+
+  /**
+   * Constructs a PiecewiseLinearModel from its segments
+   *
+   * @param numLeaves the number of leaves in the tree
+   * @param errorBound the largest distance between a predicted and a real leaf address
+   * @param firstKeys the first key of every segment
+   * @param firstAddresses the address of the first leaf of every segment
+   * @param slopes the slope of every segment, in leaves per key
+   */
+  private PiecewiseLinearModel(
+      int numLeaves, int errorBound, int[] firstKeys, int[] firstAddresses, double[] slopes) {
+    this.numLeaves = numLeaves;
+    this.errorBound = errorBound;
+    this.firstKeys = firstKeys;
+    this.firstAddresses = firstAddresses;
+    this.slopes = slopes;
+  }
+
+  /**
+   * Fits a model to the first keys of the leaves. Each segment starts at a leaf and keeps the range
+   * of slopes for which all of its leaves are predicted within the error bound; the segment ends
+   * when the next leaf would make that range empty.
+   *
+   * @param leafKeys the first key of every leaf, in address order
+   * @param errorBound the largest distance between a predicted and a real leaf address
+   * @return the fitted model
+   */
+  public static PiecewiseLinearModel fit(int[] leafKeys, int errorBound) {
+    ArrayList<Integer> segmentStarts = new ArrayList<Integer>();
+    ArrayList<Double> segmentSlopes = new ArrayList<Double>();
+
+    int start = 0;
+    double lowSlope = Double.NEGATIVE_INFINITY;
+    double highSlope = Double.POSITIVE_INFINITY;
+    for (int i = 1; i <= leafKeys.length; i++) {
+      if (i < leafKeys.length) {
+        double distance = (double) ((long) leafKeys[i] - leafKeys[start]);
+        double low = Math.max(lowSlope, (i - start - errorBound) / distance);
+        double high = Math.min(highSlope, (i - start + errorBound) / distance);
+        if (low <= high) {
+          lowSlope = low;
+          highSlope = high;
+          continue;
+        }
+      }
+
+      // A segment with a single leaf has no slope constraint
+      segmentStarts.add(start);
+      segmentSlopes.add(i - start == 1 ? 0.0 : (lowSlope + highSlope) / 2);
+      start = i;
+      lowSlope = Double.NEGATIVE_INFINITY;
+      highSlope = Double.POSITIVE_INFINITY;
+    }
+
+    int numSegments = segmentStarts.size();
+    int[] firstKeys = new int[numSegments];
+    int[] firstAddresses = new int[numSegments];
+    double[] slopes = new double[numSegments];
+    for (int s = 0; s < numSegments; s++) {
+      firstKeys[s] = leafKeys[segmentStarts.get(s)];
+      firstAddresses[s] = segmentStarts.get(s) + 1;
+      slopes[s] = segmentSlopes.get(s);
+    }
+    return new PiecewiseLinearModel(leafKeys.length, errorBound, firstKeys, firstAddresses, slopes);
+  }
+
+  /**
+   * Reads a model from its pages in the index file
+   *
+   * @param file the index file
+   * @param address the address of the first model page
+   * @param numSegments the number of segments
+   * @param numLeaves the number of leaves in the tree
+   * @param errorBound the error bound the model was fitted with
+   * @return the model
+   */
+  public static PiecewiseLinearModel read(
+      IndexFile file, int address, int numSegments, int numLeaves, int errorBound) {
+    ByteBuffer buffer = ByteBuffer.allocate(getNumPages(numSegments) * Constants.IO.PAGE_SIZE);
+    file.read(buffer, (long) address * Constants.IO.PAGE_SIZE);
+    buffer.flip();
+
+    int[] firstKeys = new int[numSegments];
+    int[] firstAddresses = new int[numSegments];
+    double[] slopes = new double[numSegments];
+    for (int s = 0; s < numSegments; s++) {
+      buffer.position(s * SEGMENT_SIZE);
+      firstKeys[s] = buffer.getInt();
+      firstAddresses[s] = buffer.getInt();
+      slopes[s] = buffer.getDouble();
+    }
+    return new PiecewiseLinearModel(numLeaves, errorBound, firstKeys, firstAddresses, slopes);
+  }
+
+  /**
+   * Writes the segment at the given position to the buffer
+   *
+   * @param segment the position of the segment
+   * @param buffer the buffer of the model page being written
+   */
+  public void serializeSegment(int segment, ByteBuffer buffer) {
+    buffer.putInt(firstKeys[segment]);
+    buffer.putInt(firstAddresses[segment]);
+    buffer.putDouble(slopes[segment]);
+  }
+
+  /**
+   * Returns the number of pages needed for the given number of segments
+   *
+   * @param numSegments the number of segments
+   * @return the number of model pages
+   */
+  public static int getNumPages(int numSegments) {
+    return (numSegments + SEGMENTS_PER_PAGE - 1) / SEGMENTS_PER_PAGE;
+  }
+
+  /**
+   * Predicts the address of the leaf whose key range contains the given key. The real leaf is at
+   * most errorBound + 1 leaves away from the prediction.
+   *
+   * @param key the key to search for
+   * @return the predicted leaf address
+   */
+  public int predictLeaf(int key) {
+    // Find the last segment whose first key is less than or equal to the key
+    int low = 0;
+    int high = firstKeys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (firstKeys[middle] <= key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    if (low == 0) return 1;
+
+    int segment = low - 1;
+    int lastAddress =
+        segment + 1 < firstAddresses.length ? firstAddresses[segment + 1] - 1 : numLeaves;
+    double prediction =
+        firstAddresses[segment] + slopes[segment] * ((long) key - firstKeys[segment]);
+    return (int) Math.max(firstAddresses[segment], Math.min(lastAddress, Math.floor(prediction)));
+  }
+
+  /**
+   * Returns the number of segments of the model
+   *
+   * @return the number of segments
+   */
+  public int getNumSegments() {
+    return firstKeys.length;
+  }
+
+  /**
+   * Returns the error bound the model was fitted with
+   *
+   * @return the largest distance between a predicted and a real leaf address
+   */
+  public int getErrorBound() {
+    return errorBound;
+  }
+
+  /**
+   * Returns a description of the segment at the given position
+   *
+   * @param segment the position of the segment
+   * @return the first key, first leaf address and slope of the segment
+   */
+  public String getSegmentString(int segment) {
+    return "Segment from key "
+        + firstKeys[segment]
+        + " at leaf "
+        + firstAddresses[segment]
+        + ", slope "
+        + slopes[segment];
+  }
+}
@@ -0,0 +1,453 @@
+package btree;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * RoaringBitmap is a compressed set of non-negative integers. Values are partitioned by their high
+ * 16 bits into containers; a container holding at most {@link #ARRAY_LIMIT} values stores them as a
+ * sorted array of their low 16 bits, and a denser container stores a 65536-bit bitmap.
+ */
+public class RoaringBitmap {
+  /** The largest number of values kept in an array container */
+  public static final int ARRAY_LIMIT = 4096;
+
+  private static final int BITMAP_WORDS = 1024;
+
+  private ArrayList<Integer> highs;
+  private ArrayList<Container> containers;
+
+  /** Constructs an empty RoaringBitmap */
+  public RoaringBitmap() {
+    this.highs = new ArrayList<Integer>();
+    this.containers = new ArrayList<Container>();
+  }
+
+  /**
+   * Returns a bitmap holding every value in [0, end)
+   *
+   * @param end the first value not in the bitmap
+   * @return the new bitmap
+   */
+  public static RoaringBitmap range(int end) {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    for (int high = 0; (high << 16) < end; high++) {
+      long[] words = new long[BITMAP_WORDS];
+      int count = Math.min(end - (high << 16), 1 << 16);
+      for (int i = 0; i < count / 64; i++) {
+        words[i] = -1L;
+      }
+      if (count % 64 != 0) {
+        words[count / 64] = (1L << (count % 64)) - 1;
+      }
+      bitmap.highs.add(high);
+      bitmap.containers.add(Container.fromWords(words));
+    }
+    return bitmap;
+  }
+
+  /**
+   * Adds a value to the bitmap. Values added in ascending order are appended without a search.
+   *
+   * @param value the value to add
+   */
+  public void add(int value) {
+    int high = value >>> 16;
+    int position = highs.size() - 1;
+    if (position < 0 || highs.get(position) != high) {
+      position = findContainer(high);
+      if (position < 0) {
+        position = -position - 1;
+        highs.add(position, high);
+        containers.add(position, new Container());
+      }
+    }
+    containers.set(position, containers.get(position).add((char) value));
+  }
+
+  /**
+   * Checks whether the bitmap holds the given value
+   *
+   * @param value the value to look for
+   * @return true if the value is in the bitmap
+   */
+  public boolean contains(int value) {
+    int position = findContainer(value >>> 16);
+    return position >= 0 && containers.get(position).contains((char) value);
+  }
+
+  /**
+   * Returns the number of values in the bitmap
+   *
+   * @return the number of values
+   */
+  public int getCardinality() {
+    int cardinality = 0;
+    for (Container container : containers) {
+      cardinality += container.cardinality;
+    }
+    return cardinality;
+  }
+
+  /**
+   * Returns the values of the bitmap in ascending order
+   *
+   * @return the array of values
+   */
+  public int[] toArray() {
+    int[] values = new int[getCardinality()];
+    int count = 0;
+    for (int i = 0; i < containers.size(); i++) {
+      count = containers.get(i).copyTo(values, count, highs.get(i) << 16);
+    }
+    return values;
+  }
+
+  /**
+   * Returns the intersection of this bitmap and the given bitmap
+   *
+   * @param other the other bitmap
+   * @return a new bitmap with the values in both bitmaps
+   */
+  public RoaringBitmap and(RoaringBitmap other) {
+    RoaringBitmap result = new RoaringBitmap();
+    int i = 0;
+    int j = 0;
+    while (i < highs.size() && j < other.highs.size()) {
+      int compare = Integer.compare(highs.get(i), other.highs.get(j));
+      if (compare < 0) {
+        i++;
+      } else if (compare > 0) {
+        j++;
+      } else {
+        result.append(highs.get(i), containers.get(i).and(other.containers.get(j)));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the union of this bitmap and the given bitmap
+   *
+   * @param other the other bitmap
+   * @return a new bitmap with the values in either bitmap
+   */
+  public RoaringBitmap or(RoaringBitmap other) {
+    RoaringBitmap result = new RoaringBitmap();
+    int i = 0;
+    int j = 0;
+    while (i < highs.size() || j < other.highs.size()) {
+      int compare =
+          i == highs.size()
+              ? 1
+              : j == other.highs.size() ? -1 : Integer.compare(highs.get(i), other.highs.get(j));
+      if (compare < 0) {
+        result.append(highs.get(i), containers.get(i).copy());
+        i++;
+      } else if (compare > 0) {
+        result.append(other.highs.get(j), other.containers.get(j).copy());
+        j++;
+      } else {
+        result.append(highs.get(i), containers.get(i).or(other.containers.get(j)));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the difference of this bitmap and the given bitmap
+   *
+   * @param other the other bitmap
+   * @return a new bitmap with the values in this bitmap but not in the other
+   */
+  public RoaringBitmap andNot(RoaringBitmap other) {
+    RoaringBitmap result = new RoaringBitmap();
+    int j = 0;
+    for (int i = 0; i < highs.size(); i++) {
+      while (j < other.highs.size() && other.highs.get(j) < highs.get(i)) {
+        j++;
+      }
+      if (j < other.highs.size() && other.highs.get(j).equals(highs.get(i))) {
+        result.append(highs.get(i), containers.get(i).andNot(other.containers.get(j)));
+      } else {
+        result.append(highs.get(i), containers.get(i).copy());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of bytes the serialized bitmap takes
+   *
+   * @return the serialized size in bytes
+   */
+  public int getSerializedSize() {
+    int size = 4;
+    for (Container container : containers) {
+      size += 8 + container.getSerializedSize();
+    }
+    return size;
+  }
+
+  /**
+   * Writes the bitmap to the given buffer
+   *
+   * @param buffer the buffer to write to
+   */
+  public void serialize(ByteBuffer buffer) {
+    buffer.putInt(containers.size());
+    for (int i = 0; i < containers.size(); i++) {
+      buffer.putInt(highs.get(i));
+      containers.get(i).serialize(buffer);
+    }
+  }
+
+  /**
+   * Reads a bitmap written by {@link #serialize(ByteBuffer)} from the given buffer
+   *
+   * @param buffer the buffer to read from
+   * @return the bitmap
+   */
+  public static RoaringBitmap deserialize(ByteBuffer buffer) {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    int numContainers = buffer.getInt();
+    for (int i = 0; i < numContainers; i++) {
+      bitmap.highs.add(buffer.getInt());
+      bitmap.containers.add(Container.deserialize(buffer));
+    }
+    return bitmap;
+  }
+
+  /**
+   * Appends a container with a larger high value than all existing ones, skipping empty containers
+   *
+   * @param high the high 16 bits of the container's values
+   * @param container the container
+   */
+  private void append(int high, Container container) {
+    if (container.cardinality > 0) {
+      highs.add(high);
+      containers.add(container);
+    }
+  }
+
+  /**
+   * Binary searches for the container with the given high 16 bits
+   *
+   * @param high the high 16 bits
+   * @return the position of the container, or (-(insertion point) - 1) if there is none
+   */
+  private int findContainer(int high) {
+    int low = 0;
+    int top = highs.size() - 1;
+    while (low <= top) {
+      int middle = (low + top) >>> 1;
+      int compare = Integer.compare(highs.get(middle), high);
+      if (compare < 0) {
+        low = middle + 1;
+      } else if (compare > 0) {
+        top = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /** Container holds the low 16 bits of the values sharing the same high 16 bits */
+  private static class Container {
+    private char[] values;
+    private long[] words;
+    private int cardinality;
+
+    Container() {
+      this.values = new char[4];
+    }
+
+    static Container fromWords(long[] words) {
+      int cardinality = 0;
+      for (long word : words) {
+        cardinality += Long.bitCount(word);
+      }
+
+      Container container = new Container();
+      container.cardinality = cardinality;
+      if (cardinality > ARRAY_LIMIT) {
+        container.values = null;
+        container.words = words;
+      } else {
+        container.values = new char[cardinality];
+        int count = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          long word = words[i];
+          while (word != 0) {
+            container.values[count++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+            word &= word - 1;
+          }
+        }
+      }
+      return container;
+    }
+
+    Container add(char low) {
+      if (words != null) {
+        if ((words[low >>> 6] & (1L << low)) == 0) {
+          words[low >>> 6] |= 1L << low;
+          cardinality++;
+        }
+        return this;
+      }
+
+      int position;
+      if (cardinality == 0 || values[cardinality - 1] < low) {
+        position = cardinality;
+      } else {
+        position = Arrays.binarySearch(values, 0, cardinality, low);
+        if (position >= 0) return this;
+        position = -position - 1;
+      }
+
+      if (cardinality == ARRAY_LIMIT) {
+        long[] converted = toWords();
+        converted[low >>> 6] |= 1L << low;
+        return fromWords(converted);
+      }
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.min(2 * cardinality, ARRAY_LIMIT));
+      }
+      System.arraycopy(values, position, values, position + 1, cardinality - position);
+      values[position] = low;
+      cardinality++;
+      return this;
+    }
+
+    Container copy() {
+      Container container = new Container();
+      container.cardinality = cardinality;
+      container.values = values == null ? null : values.clone();
+      container.words = words == null ? null : words.clone();
+      return container;
+    }
+
+    boolean contains(char low) {
+      if (words != null) {
+        return (words[low >>> 6] & (1L << low)) != 0;
+      }
+      return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+    }
+
+    long[] toWords() {
+      if (words != null) {
+        return words.clone();
+      }
+      long[] converted = new long[BITMAP_WORDS];
+      for (int i = 0; i < cardinality; i++) {
+        converted[values[i] >>> 6] |= 1L << values[i];
+      }
+      return converted;
+    }
+
+    Container and(Container other) {
+      if (words == null && other.words == null) {
+        Container result = new Container();
+        result.values = new char[Math.min(cardinality, other.cardinality)];
+        int i = 0;
+        int j = 0;
+        while (i < cardinality && j < other.cardinality) {
+          if (values[i] < other.values[j]) {
+            i++;
+          } else if (values[i] > other.values[j]) {
+            j++;
+          } else {
+            result.values[result.cardinality++] = values[i];
+            i++;
+            j++;
+          }
+        }
+        return result;
+      }
+
+      long[] result = toWords();
+      long[] otherWords = other.toWords();
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        result[i] &= otherWords[i];
+      }
+      return fromWords(result);
+    }
+
+    Container or(Container other) {
+      long[] result = toWords();
+      long[] otherWords = other.toWords();
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        result[i] |= otherWords[i];
+      }
+      return fromWords(result);
+    }
+
+    Container andNot(Container other) {
+      long[] result = toWords();
+      long[] otherWords = other.toWords();
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        result[i] &= ~otherWords[i];
+      }
+      return fromWords(result);
+    }
+
+    int copyTo(int[] target, int offset, int base) {
+      if (words == null) {
+        for (int i = 0; i < cardinality; i++) {
+          target[offset++] = base | values[i];
+        }
+        return offset;
+      }
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long word = words[i];
+        while (word != 0) {
+          target[offset++] = base | (i * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return offset;
+    }
+
+    int getSerializedSize() {
+      return words == null ? 2 * cardinality : 8 * BITMAP_WORDS;
+    }
+
+    void serialize(ByteBuffer buffer) {
+      buffer.putInt(cardinality);
+      if (words == null) {
+        for (int i = 0; i < cardinality; i++) {
+          buffer.putChar(values[i]);
+        }
+      } else {
+        for (long word : words) {
+          buffer.putLong(word);
+        }
+      }
+    }
+
+    static Container deserialize(ByteBuffer buffer) {
+      Container container = new Container();
+      container.cardinality = buffer.getInt();
+      if (container.cardinality > ARRAY_LIMIT) {
+        container.values = null;
+        container.words = new long[BITMAP_WORDS];
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+          container.words[i] = buffer.getLong();
+        }
+      } else {
+        container.values = new char[container.cardinality];
+        for (int i = 0; i < container.cardinality; i++) {
+          container.values[i] = buffer.getChar();
+        }
+      }
+      return container;
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package btree;
+
+/** ScalarNodeSearch is the node search kernel used when the Vector API is not available */
+public class ScalarNodeSearch extends NodeSearch {
+  @Override
+  public int countKeysAtMost(int[] keys, int from, int numBlocks, int key) {
+    int low = from;
+    int high = from + numBlocks * BLOCK_SIZE;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle] <= key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low - from;
+  }
+}
@@ -0,0 +1,33 @@
+package btree;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorNodeSearch compares a whole vector of keys against the probe key per instruction (8 keys
+ * with 256-bit and 16 keys with 512-bit registers). Since the keys are sorted, the scan stops at
+ * the first vector that has a key greater than the probe key.
+ */
+public class VectorNodeSearch extends NodeSearch {
+  // At most 512 bits, i.e. 16 ints, which divides BLOCK_SIZE: every vector lies within one block
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+  static {
+    assert BLOCK_SIZE % SPECIES.length() == 0 : "Vector wider than a key block: " + SPECIES;
+  }
+
+  @Override
+  public int countKeysAtMost(int[] keys, int from, int numBlocks, int key) {
+    int lanes = SPECIES.length();
+    int end = from + numBlocks * BLOCK_SIZE;
+    int count = 0;
+    for (int i = from; i < end; i += lanes) {
+      int matches =
+          IntVector.fromArray(SPECIES, keys, i).compare(VectorOperators.LE, key).trueCount();
+      count += matches;
+      if (matches < lanes) break;
+    }
+    return count;
+  }
+}